@@ -3,6 +3,11 @@ import javalib.impworld.*;
 import java.awt.Color;
 import javalib.worldimages.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import com.sun.net.httpserver.*;
 
 // represents a mutable collection of items
 interface ICollection<T> {
@@ -111,6 +116,15 @@ class Edge {
     this.weight = rand.nextInt(1000);
   }
 
+  // constructor for an edge whose weight is drawn from a given
+  // (possibly seeded) random number generator
+  Edge(Vertex from, Vertex to, Random rand) {
+    this.from = from;
+    this.to = to;
+    this.rand = rand;
+    this.weight = rand.nextInt(1000);
+  }
+
   // constructor for an edge with an assigned weight
   // for testing purposes
   Edge(Vertex from, Vertex to, int weight) {
@@ -119,6 +133,70 @@ class Edge {
     this.rand = new Random();
     this.weight = weight;
   }
+
+  // constructor for an edge with a known weight that shares the random
+  // number generator of the edge it was made from
+  Edge(Vertex from, Vertex to, Random rand, int weight) {
+    this.from = from;
+    this.to = to;
+    this.rand = rand;
+    this.weight = weight;
+  }
+
+  // the same edge traversed in the other direction
+  Edge reverse() {
+    return new Edge(to, from, rand, weight);
+  }
+}
+
+// represents a maximal straight run of wall segments along one grid line
+class WallRun {
+  boolean horizontal;
+  int x;
+  int y;
+  int length;
+
+  // constructor for a wall run: a horizontal run lies between rows y and y + 1
+  // starting at column x, a vertical run lies between columns x and x + 1
+  // starting at row y, and either spans length cells
+  WallRun(boolean horizontal, int x, int y, int length) {
+    this.horizontal = horizontal;
+    this.x = x;
+    this.y = y;
+    this.length = length;
+  }
+
+  // draws the run as a single rectangle
+  WorldImage drawRun() {
+    if (horizontal) {
+      return new RectangleImage(length * MazeWorld.VERTEX_SIZE, MazeWorld.VERTEX_SIZE / 10, 
+          OutlineMode.SOLID, Color.black);
+    }
+    else {
+      return new RectangleImage(MazeWorld.VERTEX_SIZE / 10, length * MazeWorld.VERTEX_SIZE, 
+          OutlineMode.SOLID, Color.black);
+    }
+  }
+
+  // the x coordinate of the center of the run in the scene
+  int centerX() {
+    if (horizontal) {
+      return (x * MazeWorld.VERTEX_SIZE) + (length * MazeWorld.VERTEX_SIZE / 2);
+    }
+    else {
+      return ((2 * x + 1) * MazeWorld.VERTEX_SIZE / 2) + (MazeWorld.VERTEX_SIZE / 2);
+    }
+  }
+
+  // the y coordinate of the center of the run in the scene
+  int centerY() {
+    if (horizontal) {
+      return ((2 * y + 1) * MazeWorld.VERTEX_SIZE / 2) + (MazeWorld.VERTEX_SIZE / 2);
+    }
+    else {
+      return (y * MazeWorld.VERTEX_SIZE) + (length * MazeWorld.VERTEX_SIZE / 2);
+    }
+  }
 }
 
 // represents a maze with vertices and edges
@@ -127,12 +205,25 @@ class MazeWorld extends World {
   static int HEIGHT = 20;
   static int VERTEX_SIZE = 30;
 
+  int width;
+  int height;
   ArrayList<ArrayList<Vertex>> allVertices;
   ArrayList<Edge> allEdges;
+  // below[y][x]: wall between (x, y) and (x, y + 1)
+  // right[y][x]: wall between (x, y) and (x + 1, y)
+  boolean[][] below;
+  boolean[][] right;
+  // rowRuns.get(y): the horizontal runs below row y
+  // colRuns.get(x): the vertical runs right of column x
+  ArrayList<ArrayList<WallRun>> rowRuns;
+  ArrayList<ArrayList<WallRun>> colRuns;
+  Random rand;
   ArrayList<Vertex> explored;
   ArrayList<Vertex> solution;
   HashMap<Posn, Posn> cameFromEdge;
+  LpaStarSolver planner;
   boolean found;
+  int expanded;
   int count;
   int increment;
   int timer;
@@ -141,44 +232,60 @@ class MazeWorld extends World {
 
   // constructor for MazeWorld
   MazeWorld() {
+    this(WIDTH, HEIGHT, new Random());
+  }
+
+  // constructor for a reproducible MazeWorld of the given size
+  MazeWorld(int width, int height, long seed) {
+    this(width, height, new Random(seed));
+  }
+
+  // constructor for a MazeWorld of the given size whose edge weights
+  // come from the given random number generator
+  MazeWorld(int width, int height, Random rand) {
+    this.width = width;
+    this.height = height;
+    this.rand = rand;
     this.timer = 0;
     this.seconds = 0;
     this.minutes = 0;
     ArrayList<ArrayList<Vertex>> vertices = new ArrayList<ArrayList<Vertex>>();
     ArrayList<Edge> edges = new ArrayList<Edge>();
-    HashMap<Posn, Posn> map = new HashMap<Posn, Posn>();
+    // union-find over vertex indices y * width + x, by size with path halving
+    int[] parent = new int[width * height];
+    int[] size = new int[width * height];
 
-    for (int i = 0; i < HEIGHT; i++) {
+    for (int i = 0; i < height; i++) {
       ArrayList<Vertex> row = new ArrayList<Vertex>();
-      for (int j = 0; j < WIDTH; j++) {
+      for (int j = 0; j < width; j++) {
         Vertex newVertex = new Vertex(j, i);
         row.add(newVertex);
-        map.put(new Posn(newVertex.x, newVertex.y), 
-            new Posn(newVertex.x, newVertex.y));
+        parent[i * width + j] = i * width + j;
+        size[i * width + j] = 1;
       }
       vertices.add(row);
     }
 
     vertices.get(0).get(0).color = Color.blue;
-    vertices.get(HEIGHT - 1).get(WIDTH - 1).color = Color.green;
+    vertices.get(height - 1).get(width - 1).color = Color.green;
 
-    for (int i = 0; i < HEIGHT; i++) {
-      for (int j = 0; j < WIDTH; j++) {
+    for (int i = 0; i < height; i++) {
+      for (int j = 0; j < width; j++) {
         if (j != 0) {
           edges.add(new Edge(vertices.get(i).get(j), 
-              vertices.get(i).get(j - 1)));
+              vertices.get(i).get(j - 1), rand));
         }
-        if (j != WIDTH - 1) {
+        if (j != width - 1) {
           edges.add(new Edge(vertices.get(i).get(j), 
-              vertices.get(i).get(j + 1)));
+              vertices.get(i).get(j + 1), rand));
         }
         if (i != 0) {
           edges.add(new Edge(vertices.get(i).get(j), 
-              vertices.get(i - 1).get(j)));
+              vertices.get(i - 1).get(j), rand));
         }
-        if (i != HEIGHT - 1) {
+        if (i != height - 1) {
           edges.add(new Edge(vertices.get(i).get(j), 
-              vertices.get(i + 1).get(j)));
+              vertices.get(i + 1).get(j), rand));
         }
       }
     }
@@ -188,24 +295,26 @@ class MazeWorld extends World {
     this.count = 0;
     this.increment = 0;
 
-    int edgeCount = 0;
-
-    while (edgeCount < (WIDTH * HEIGHT) - 1) {
-      for (int i = 0; i < edges.size(); i++) {
-        Edge e = edges.get(i);
-        if (!(find(map, e.to.position).equals(find(map, e.from.position)))) {
-          edgeCount++;
-          e.from.outEdges.add(e);
-          e.to.outEdges.add(new Edge(e.to, e.from, e.weight));
-          Posn p = find(map, e.to.position);
-          map.remove(find(map, e.to.position));
-          map.put(p, find(map, e.from.position));
+    // one pass over the sorted edges joins every vertex into the tree
+    for (Edge e : edges) {
+      int a = GridMaze.root(parent, e.from.y * width + e.from.x);
+      int b = GridMaze.root(parent, e.to.y * width + e.to.x);
+      if (a != b) {
+        e.from.outEdges.add(e);
+        e.to.outEdges.add(e.reverse());
+        if (size[a] < size[b]) {
+          int swap = a;
+          a = b;
+          b = swap;
         }
+        parent[b] = a;
+        size[a] += size[b];
       }
     }
 
     this.allVertices = vertices;
     this.allEdges = edges;
+    computeWallRuns();
     this.explored = new ArrayList<Vertex>();
     this.solution = new ArrayList<Vertex>();
     this.cameFromEdge = new HashMap<Posn, Posn>();
@@ -216,9 +325,13 @@ class MazeWorld extends World {
   MazeWorld(ArrayList<ArrayList<Vertex>> allVertices, 
       ArrayList<Vertex> explored, ArrayList<Vertex> solution) {
     this.allVertices = allVertices;
+    this.height = allVertices.size();
+    this.width = allVertices.isEmpty() ? 0 : allVertices.get(0).size();
     this.explored = explored;
     this.solution = solution;
     this.allEdges = new ArrayList<Edge>();
+    this.rand = new Random();
+    computeWallRuns();
     this.cameFromEdge = new HashMap<Posn, Posn>();
     this.found = false;
     this.count = 0;
@@ -228,22 +341,13 @@ class MazeWorld extends World {
     this.minutes = 0;
   }
 
-  // finds the corresponding position in the HashMap
-  Posn find(HashMap<Posn, Posn> map, Posn p) {
-    if (map.get(p) == p) {
-      return p;
-    } else {
-      return find(map, map.get(p));
-    }
-  }
-
   // handles frame rate and animations 
   public void onTick() {
-    if (this.count == WIDTH) {
+    if (this.count == width) {
       this.count = 0;
     }
 
-    if (allVertices.get(HEIGHT - 1).get(WIDTH - 1).color == Color.blue) {
+    if (allVertices.get(height - 1).get(width - 1).color == Color.blue) {
       if (this.increment >= solution.size()) {
         this.increment = 0;
       }
@@ -254,7 +358,7 @@ class MazeWorld extends World {
 
     for (Edge e : allEdges) {
       boolean add = true;
-      for (int i = 0; i < HEIGHT; i++) {
+      for (int i = 0; i < height; i++) {
         for (Edge e2 : allVertices.get(i).get(count).outEdges) {
           if ((e.to == e2.to && e.from == e2.from)
               || (e.to == e2.from && e.from == e2.to)) {
@@ -265,176 +369,1854 @@ class MazeWorld extends World {
       if (add) {
         finalEdges.add(e);
       }
+      else {
+        setWall(e.from, e.to, false);
+      }
+    }
+
+    if (!explored.isEmpty()) {
+      if (this.increment >= explored.size()) {
+        this.increment = 0;
+      }
+      explored.get(increment).color = Color.cyan;
+    }
+
+    if (allVertices.get(height - 1).get(width - 1).color == Color.cyan) {
+      allVertices.get(height - 1).get(width - 1).color = Color.blue;
+      reconstruct(allVertices.get(height - 1).get(width - 1));
+    }
+
+    for (Vertex v : solution) {
+      explored.remove(v);
+    }
+    
+    if (this.timer == 120) {
+      timer = 0;
+      seconds++;
+    }
+    if (this.seconds == 60) {
+      minutes++;
+      seconds = 0;
+    }
+
+    this.allEdges = finalEdges;
+    count++;
+    increment++;
+    timer++;
+  }
+
+  // handles keystrokes for the maze
+  public void onKeyEvent(String key) {
+    if (key.equals("b")) {
+      bfs(allVertices.get(0).get(0), 
+          allVertices.get(height - 1).get(width - 1));
+    }
+    if (key.equals("d")) {
+      dfs(allVertices.get(0).get(0), 
+          allVertices.get(height - 1).get(width - 1));
+    }
+    if (key.equals("l")) {
+      startLivePath();
+    }
+  }
+
+  // uses breadth first search to highlight the solution for the maze
+  void bfs(Vertex from, Vertex to) {
+    explored = new ArrayList<Vertex>();
+    solution = new ArrayList<Vertex>();
+    cameFromEdge = new HashMap<Posn, Posn>();
+    increment = 0;
+    timer = 0;
+    seconds = 0;
+    minutes = 0;
+    found = false;
+    planner = null;
+    for (ArrayList<Vertex> l : allVertices) {
+      for (Vertex v : l) {
+        v.color = Color.gray;
+      }
+    }
+    allVertices.get(0).get(0).color = Color.blue;
+    allVertices.get(height - 1).get(width - 1).color = Color.green;
+    searchHelp(from, to, new Queue<Vertex>());
+  }
+
+  // uses depth first search to highlight the solution for the maze
+  void dfs(Vertex from, Vertex to) {
+    explored = new ArrayList<Vertex>();
+    solution = new ArrayList<Vertex>();
+    cameFromEdge = new HashMap<Posn, Posn>();
+    increment = 0;
+    timer = 0;
+    seconds = 0;
+    minutes = 0;
+    found = false;
+    planner = null;
+    for (ArrayList<Vertex> l : allVertices) {
+      for (Vertex v : l) {
+        v.color = Color.gray;
+      }
+    }
+    allVertices.get(0).get(0).color = Color.blue;
+    allVertices.get(height - 1).get(width - 1).color = Color.green;
+    searchHelp(from, to, new Stack<Vertex>());
+  }
+
+  // helper for search algorithms; expanded ends up as the number of distinct
+  // vertices it expanded, whereas explored also holds every repeat visit
+  void searchHelp(Vertex from, Vertex to, ICollection<Vertex> workList) {
+    HashSet<Vertex> alreadySeen = new HashSet<Vertex>();
+
+    workList.add(from);
+    explored.add(from);
+    while (!workList.isEmpty()) {
+      Vertex next = workList.remove();
+      if (next.equals(to)) {
+        found = true;
+        while (!workList.isEmpty()) {
+          workList.remove();
+        }
+      }
+      else if (alreadySeen.contains(next)) {
+        // do nothing
+      }
+      else {
+        for (Edge e : next.outEdges) {
+          workList.add(e.to);
+          explored.add(e.to);
+          cameFromEdge.putIfAbsent(e.to.position, e.from.position);
+        }        
+        alreadySeen.add(next);
+      }
+    }
+    expanded = alreadySeen.size();
+  }
+
+  // highlights the shortest path after search
+  void reconstruct(Vertex v) {
+    solution.add(v);
+    explored.remove(v);
+
+    if (v != allVertices.get(0).get(0)) {
+      for (int i = 0; i < allVertices.size(); i++) {
+        for (int j = 0; j < allVertices.get(i).size(); j++) {
+          if (allVertices.get(i).get(j).position.equals(cameFromEdge.get(v.position))) {
+            reconstruct(allVertices.get(i).get(j));
+          }
+        }
+      }
+    }
+  }
+
+  // returns the vertex at the given position in this maze
+  Vertex vertexAt(Posn p) {
+    return allVertices.get(p.y).get(p.x);
+  }
+
+  // walks cameFromEdge back from the target to the source of the last search,
+  // returning the path in travel order (empty if the target was never reached)
+  // without touching the colors or the animated solution
+  ArrayList<Vertex> pathTo(Vertex from, Vertex to) {
+    ArrayList<Vertex> path = new ArrayList<Vertex>();
+    Vertex v = to;
+    path.add(v);
+    while (v != from) {
+      Posn prev = cameFromEdge.get(v.position);
+      if (prev == null) {
+        return new ArrayList<Vertex>();
+      }
+      v = vertexAt(prev);
+      path.add(v);
+    }
+    Collections.reverse(path);
+    return path;
+  }
+
+  // determines whether a passage joins the given vertex to the one at (x, y)
+  boolean hasPassage(Vertex v, int x, int y) {
+    for (Edge e : v.outEdges) {
+      if (e.to.x == x && e.to.y == y) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // writes the walls of this maze in compact binary form: the width and
+  // height as two big-endian ints, then two bits per cell in row-major
+  // order (east wall, then south wall), packed least significant bit first.
+  // Walls on the outer border are always set.
+  void writeWalls(OutputStream out) throws IOException {
+    DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+    data.writeInt(width);
+    data.writeInt(height);
+    int current = 0;
+    int bits = 0;
+    for (ArrayList<Vertex> l : allVertices) {
+      for (Vertex v : l) {
+        if (!hasPassage(v, v.x + 1, v.y)) {
+          current |= 1 << bits;
+        }
+        if (!hasPassage(v, v.x, v.y + 1)) {
+          current |= 1 << (bits + 1);
+        }
+        bits += 2;
+        if (bits == 8) {
+          data.writeByte(current);
+          current = 0;
+          bits = 0;
+        }
+      }
+    }
+    if (bits != 0) {
+      data.writeByte(current);
+    }
+    data.flush();
+  }
+
+  // builds the wall grids from the walls in allEdges, as the maze is first
+  // shown, and merges them into maximal horizontal and vertical runs, so
+  // that each straight wall is drawn as one rectangle
+  void computeWallRuns() {
+    this.below = new boolean[height][width];
+    this.right = new boolean[height][width];
+    for (Edge e : allEdges) {
+      if (e.to.x == e.from.x) {
+        below[Math.min(e.to.y, e.from.y)][e.to.x] = true;
+      }
+      else {
+        right[e.to.y][Math.min(e.to.x, e.from.x)] = true;
+      }
+    }
+
+    this.rowRuns = new ArrayList<ArrayList<WallRun>>();
+    for (int y = 0; y < height; y++) {
+      rowRuns.add(new ArrayList<WallRun>());
+      rebuildRow(y);
+    }
+    this.colRuns = new ArrayList<ArrayList<WallRun>>();
+    for (int x = 0; x < width; x++) {
+      colRuns.add(new ArrayList<WallRun>());
+      rebuildColumn(x);
+    }
+  }
+
+  // merges the walls below row y into maximal horizontal runs
+  void rebuildRow(int y) {
+    ArrayList<WallRun> runs = rowRuns.get(y);
+    runs.clear();
+    int start = -1;
+    for (int x = 0; x <= width; x++) {
+      boolean wall = x < width && below[y][x];
+      if (wall && start < 0) {
+        start = x;
+      }
+      else if (!wall && start >= 0) {
+        runs.add(new WallRun(true, start, y, x - start));
+        start = -1;
+      }
+    }
+  }
+
+  // merges the walls right of column x into maximal vertical runs
+  void rebuildColumn(int x) {
+    ArrayList<WallRun> runs = colRuns.get(x);
+    runs.clear();
+    int start = -1;
+    for (int y = 0; y <= height; y++) {
+      boolean wall = y < height && right[y][x];
+      if (wall && start < 0) {
+        start = y;
+      }
+      else if (!wall && start >= 0) {
+        runs.add(new WallRun(false, x, start, y - start));
+        start = -1;
+      }
+    }
+  }
+
+  // shows or hides the wall between two adjacent vertices, rebuilding the
+  // runs of the one grid line it lies on
+  void setWall(Vertex a, Vertex b, boolean wall) {
+    if (a.x == b.x) {
+      int y = Math.min(a.y, b.y);
+      if (below[y][a.x] != wall) {
+        below[y][a.x] = wall;
+        rebuildRow(y);
+      }
+    }
+    else {
+      int x = Math.min(a.x, b.x);
+      if (right[a.y][x] != wall) {
+        right[a.y][x] = wall;
+        rebuildColumn(x);
+      }
+    }
+  }
+
+  // every wall run currently shown, horizontal runs first
+  ArrayList<WallRun> wallRuns() {
+    ArrayList<WallRun> runs = new ArrayList<WallRun>();
+    for (ArrayList<WallRun> l : rowRuns) {
+      runs.addAll(l);
+    }
+    for (ArrayList<WallRun> l : colRuns) {
+      runs.addAll(l);
+    }
+    return runs;
+  }
+
+  // opens the wall between two adjacent vertices, or closes the passage
+  // between them, keeping the wall runs and any live path in step. Only the
+  // grid line holding the wall is rebuilt; allEdges is left alone, since it
+  // only holds the edges the carving animation has still to reveal
+  void toggleWall(Vertex a, Vertex b) {
+    if (Math.abs(a.x - b.x) + Math.abs(a.y - b.y) != 1) {
+      throw new IllegalArgumentException("vertices are not adjacent");
+    }
+
+    if (hasPassage(a, b.x, b.y)) {
+      a.outEdges.removeIf(e -> e.to == b);
+      b.outEdges.removeIf(e -> e.to == a);
+      setWall(a, b, true);
+    }
+    else {
+      Edge e = new Edge(a, b, rand);
+      a.outEdges.add(e);
+      b.outEdges.add(e.reverse());
+      setWall(a, b, false);
+    }
+
+    if (planner != null) {
+      planner.wallChanged(a, b);
+      showLivePath();
+    }
+  }
+
+  // starts solving the maze incrementally, so the path is repaired and
+  // redrawn every time a wall is toggled
+  void startLivePath() {
+    explored = new ArrayList<Vertex>();
+    solution = new ArrayList<Vertex>();
+    cameFromEdge = new HashMap<Posn, Posn>();
+    increment = 0;
+    found = false;
+    for (ArrayList<Vertex> l : allVertices) {
+      for (Vertex v : l) {
+        v.color = Color.gray;
+      }
+    }
+    planner = new LpaStarSolver(this, allVertices.get(0).get(0), 
+        allVertices.get(height - 1).get(width - 1));
+    showLivePath();
+  }
+
+  // repairs the live path and recolors only the vertices on the old and new path
+  void showLivePath() {
+    planner.computeShortestPath();
+    for (Vertex v : solution) {
+      v.color = Color.gray;
+    }
+    solution = planner.path();
+    found = !solution.isEmpty();
+    for (Vertex v : solution) {
+      v.color = Color.blue;
+    }
+    allVertices.get(0).get(0).color = Color.blue;
+    if (!found) {
+      allVertices.get(height - 1).get(width - 1).color = Color.green;
+    }
+  }
+
+  // toggles the wall on the side of the clicked square nearest the click
+  public void onMouseClicked(Posn pos) {
+    int x = pos.x / VERTEX_SIZE;
+    int y = pos.y / VERTEX_SIZE;
+    if (x >= width || y >= height) {
+      return;
+    }
+
+    int dx = (pos.x % VERTEX_SIZE) - (VERTEX_SIZE / 2);
+    int dy = (pos.y % VERTEX_SIZE) - (VERTEX_SIZE / 2);
+    int nx = x;
+    int ny = y;
+    if (Math.abs(dx) >= Math.abs(dy)) {
+      nx += dx < 0 ? -1 : 1;
+    }
+    else {
+      ny += dy < 0 ? -1 : 1;
+    }
+    if (nx >= 0 && nx < width && ny >= 0 && ny < height) {
+      toggleWall(allVertices.get(y).get(x), allVertices.get(ny).get(nx));
+    }
+  }
+
+  // creates the scene
+  public WorldScene makeScene() {
+    WorldScene scene = new WorldScene((width * VERTEX_SIZE) + 200, height * VERTEX_SIZE);
+
+    for (ArrayList<Vertex> l : allVertices) {
+      for (Vertex v : l) {
+        scene.placeImageXY(v.drawVertex(), (v.x * VERTEX_SIZE) + (VERTEX_SIZE / 2), 
+            (v.y * VERTEX_SIZE) + (VERTEX_SIZE / 2));
+      }
+    }
+
+    for (ArrayList<WallRun> l : rowRuns) {
+      for (WallRun r : l) {
+        scene.placeImageXY(r.drawRun(), r.centerX(), r.centerY());
+      }
+    }
+    for (ArrayList<WallRun> l : colRuns) {
+      for (WallRun r : l) {
+        scene.placeImageXY(r.drawRun(), r.centerX(), r.centerY());
+      }
+    }
+    
+    String secondsString = "";
+
+    if (this.seconds < 10) {
+      secondsString = "0" + Integer.toString(this.seconds);
+    }
+    else {
+      secondsString = Integer.toString(this.seconds);
+    }
+    
+    scene.placeImageXY(new TextImage("Time : " + Integer.toString(this.minutes) + ":"
+        + secondsString, 20, FontStyle.BOLD, Color.black), 
+        (width * VERTEX_SIZE) + 100, height * VERTEX_SIZE / 8);
+
+    return scene;
+  }
+}
+
+// represents an entry in the open list of an LpaStarSolver
+class PlannerEntry {
+  int k1;
+  int k2;
+  Vertex vertex;
+
+  // constructor for an open list entry with the given key
+  PlannerEntry(int k1, int k2, Vertex vertex) {
+    this.k1 = k1;
+    this.k2 = k2;
+    this.vertex = vertex;
+  }
+}
+
+// finds shortest paths through a maze with Lifelong Planning A* (LPA*).
+// After a wall is opened or closed only the vertices whose distances the
+// change affects are expanded again, instead of searching from scratch.
+class LpaStarSolver {
+  static int INFINITY = Integer.MAX_VALUE / 2;
+
+  MazeWorld maze;
+  Vertex start;
+  Vertex goal;
+  int[] g;
+  int[] rhs;
+  PriorityQueue<PlannerEntry> open;
+  int expansions;
+
+  // constructor for a solver between two vertices of the given maze
+  LpaStarSolver(MazeWorld maze, Vertex start, Vertex goal) {
+    this.maze = maze;
+    this.start = start;
+    this.goal = goal;
+    this.g = new int[maze.width * maze.height];
+    this.rhs = new int[maze.width * maze.height];
+    Arrays.fill(this.g, INFINITY);
+    Arrays.fill(this.rhs, INFINITY);
+    this.open = new PriorityQueue<PlannerEntry>((e1, e2) -> 
+        e1.k1 != e2.k1 ? Integer.compare(e1.k1, e2.k1) : Integer.compare(e1.k2, e2.k2));
+    this.expansions = 0;
+
+    this.rhs[index(start)] = 0;
+    this.open.add(entryFor(start));
+  }
+
+  // the position of a vertex in the g and rhs arrays
+  int index(Vertex v) {
+    return v.y * maze.width + v.x;
+  }
+
+  // the Manhattan distance from a vertex to the goal
+  int heuristic(Vertex v) {
+    return Math.abs(v.x - goal.x) + Math.abs(v.y - goal.y);
+  }
+
+  // a fresh open list entry carrying the current key of a vertex
+  PlannerEntry entryFor(Vertex v) {
+    int best = Math.min(g[index(v)], rhs[index(v)]);
+    return new PlannerEntry(Math.min(best + heuristic(v), INFINITY), best, v);
+  }
+
+  // determines whether an entry still reflects its vertex; entries are never
+  // removed when a key changes, a newer one is added and the old one skipped
+  boolean isCurrent(PlannerEntry e) {
+    PlannerEntry now = entryFor(e.vertex);
+    return g[index(e.vertex)] != rhs[index(e.vertex)] && e.k1 == now.k1 && e.k2 == now.k2;
+  }
+
+  // recomputes the one-step lookahead distance of a vertex and queues it
+  // if it no longer agrees with its current distance
+  void updateVertex(Vertex v) {
+    if (v != start) {
+      int best = INFINITY;
+      for (Edge e : v.outEdges) {
+        best = Math.min(best, g[index(e.to)] + 1);
+      }
+      rhs[index(v)] = best;
+    }
+    if (g[index(v)] != rhs[index(v)]) {
+      open.add(entryFor(v));
+    }
+  }
+
+  // expands vertices until the distance to the goal is known
+  void computeShortestPath() {
+    while (true) {
+      while (!open.isEmpty() && !isCurrent(open.peek())) {
+        open.poll();
+      }
+      if (open.isEmpty()) {
+        return;
+      }
+      PlannerEntry top = open.peek();
+      PlannerEntry goalKey = entryFor(goal);
+      boolean beforeGoal = top.k1 < goalKey.k1 
+          || (top.k1 == goalKey.k1 && top.k2 < goalKey.k2);
+      if (!beforeGoal && g[index(goal)] == rhs[index(goal)]) {
+        return;
+      }
+
+      open.poll();
+      expansions++;
+      Vertex u = top.vertex;
+      if (g[index(u)] > rhs[index(u)]) {
+        g[index(u)] = rhs[index(u)];
+      }
+      else {
+        g[index(u)] = INFINITY;
+        updateVertex(u);
+      }
+      for (Edge e : u.outEdges) {
+        updateVertex(e.to);
+      }
+    }
+  }
+
+  // tells the solver that the wall between two adjacent vertices was
+  // opened or closed; call computeShortestPath to repair the search
+  void wallChanged(Vertex a, Vertex b) {
+    updateVertex(a);
+    updateVertex(b);
+  }
+
+  // the shortest path from start to goal in travel order, or an empty list
+  // if the goal cannot be reached
+  ArrayList<Vertex> path() {
+    ArrayList<Vertex> path = new ArrayList<Vertex>();
+    if (g[index(goal)] >= INFINITY) {
+      return path;
+    }
+    Vertex v = goal;
+    path.add(v);
+    while (v != start) {
+      Vertex next = null;
+      for (Edge e : v.outEdges) {
+        if (next == null || g[index(e.to)] < g[index(next)]) {
+          next = e.to;
+        }
+      }
+      v = next;
+      path.add(v);
+    }
+    Collections.reverse(path);
+    return path;
+  }
+}
+
+// represents a maze as a compact grid of wall bits, two per cell in the same
+// layout writeWalls produces (east wall, then south wall), so that mazes of
+// many millions of cells fit in memory. Cells are numbered y * width + x,
+// so a grid holds at most Integer.MAX_VALUE cells.
+class GridMaze {
+  // steps for the four directions: east, south, west, north
+  static int[] DX = {1, 0, -1, 0};
+  static int[] DY = {0, 1, 0, -1};
+
+  int width;
+  int height;
+  long[] walls;
+  int expanded;
+
+  // constructor for a grid with every wall standing
+  GridMaze(int width, int height) {
+    if (width < 1 || height < 1) {
+      throw new IllegalArgumentException("width and height must be at least 1");
+    }
+    if ((long) width * height > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("a grid holds at most " + Integer.MAX_VALUE + " cells");
+    }
+    this.width = width;
+    this.height = height;
+    this.walls = new long[(int) ((2L * width * height + 63) / 64)];
+    Arrays.fill(this.walls, -1L);
+  }
+
+  // copies the passages of a MazeWorld into a new grid
+  static GridMaze fromWorld(MazeWorld world) {
+    GridMaze maze = new GridMaze(world.width, world.height);
+    for (ArrayList<Vertex> l : world.allVertices) {
+      for (Vertex v : l) {
+        for (int dir = 0; dir < 2; dir++) {
+          if (world.hasPassage(v, v.x + DX[dir], v.y + DY[dir])) {
+            maze.setOpen(v.x, v.y, dir, true);
+          }
+        }
+      }
+    }
+    return maze;
+  }
+
+  // reads a grid from the compact binary form written by MazeWorld.writeWalls;
+  // a header whose width or height no grid can hold is rejected before any
+  // walls are read
+  static GridMaze readWalls(InputStream in) throws IOException {
+    DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+    int width = data.readInt();
+    int height = data.readInt();
+    GridMaze maze = new GridMaze(width, height);
+    Arrays.fill(maze.walls, 0L);
+    int bytes = (int) ((2L * maze.width * maze.height + 7) / 8);
+    for (int i = 0; i < bytes; i++) {
+      maze.walls[i / 8] |= (long) data.readUnsignedByte() << ((i % 8) * 8);
+    }
+    return maze;
+  }
+
+  // generates the same perfect maze as new MazeWorld(width, height, seed)
+  // without building its Vertex and Edge objects. Every cell draws a weight
+  // for its west, east, north and south edge in that order, the edges are
+  // stably sorted by weight with a counting sort (weights lie below 1000) and
+  // joined with Kruskal's algorithm
+  static GridMaze kruskal(int width, int height, long seed) {
+    GridMaze maze = new GridMaze(width, height);
+    Random rand = new Random(seed);
+    int cells = width * height;
+    if (cells > Integer.MAX_VALUE / 4) {
+      throw new IllegalArgumentException("kruskal handles at most " + Integer.MAX_VALUE / 4 
+          + " cells");
+    }
+    // edge 4 * cell + k leaves the cell in direction DIRECTIONS[k]
+    int[] directions = {2, 0, 3, 1};
+    short[] weights = new short[4 * cells];
+    int[] count = new int[1001];
+    for (int cell = 0; cell < cells; cell++) {
+      int x = cell % width;
+      int y = cell / width;
+      for (int k = 0; k < 4; k++) {
+        int dir = directions[k];
+        if (maze.inside(x + DX[dir], y + DY[dir])) {
+          weights[4 * cell + k] = (short) rand.nextInt(1000);
+          count[weights[4 * cell + k] + 1]++;
+        }
+        else {
+          weights[4 * cell + k] = -1;
+        }
+      }
+    }
+
+    for (int w = 1; w <= 1000; w++) {
+      count[w] += count[w - 1];
+    }
+    int[] order = new int[count[1000]];
+    for (int e = 0; e < 4 * cells; e++) {
+      if (weights[e] >= 0) {
+        order[count[weights[e]]++] = e;
+      }
+    }
+
+    int[] parent = new int[cells];
+    int[] size = new int[cells];
+    for (int cell = 0; cell < cells; cell++) {
+      parent[cell] = cell;
+      size[cell] = 1;
+    }
+    for (int e : order) {
+      int x = (e / 4) % width;
+      int y = (e / 4) / width;
+      int dir = directions[e % 4];
+      int a = root(parent, e / 4);
+      int b = root(parent, (y + DY[dir]) * width + x + DX[dir]);
+      if (a != b) {
+        maze.setOpen(x, y, dir, true);
+        if (size[a] < size[b]) {
+          int swap = a;
+          a = b;
+          b = swap;
+        }
+        parent[b] = a;
+        size[a] += size[b];
+      }
+    }
+    return maze;
+  }
+
+  // writes the walls in the compact binary form of MazeWorld.writeWalls
+  void writeWalls(OutputStream out) throws IOException {
+    DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+    data.writeInt(width);
+    data.writeInt(height);
+    long bits = 2L * width * height;
+    long bytes = (bits + 7) / 8;
+    for (long i = 0; i < bytes; i++) {
+      int b = (int) (walls[(int) (i / 8)] >>> ((i % 8) * 8)) & 0xFF;
+      if (i == bytes - 1 && bits % 8 != 0) {
+        b &= (1 << (bits % 8)) - 1;
+      }
+      data.writeByte(b);
+    }
+    data.flush();
+  }
+
+  // generates a perfect maze row by row with Eller's algorithm, the
+  // row-at-a-time form of Kruskal's algorithm, then opens each remaining
+  // interior wall with probability braid to add loops
+  static GridMaze generate(int width, int height, long seed, double braid) {
+    GridMaze maze = new GridMaze(width, height);
+    Random rand = new Random(seed);
+    int[] set = new int[width];
+    int[] parent = new int[width];
+    int[] count = new int[width];
+    int[] seen = new int[width];
+    int[] pick = new int[width];
+    int[] label = new int[width];
+    boolean[] down = new boolean[width];
+
+    for (int x = 0; x < width; x++) {
+      set[x] = x;
+    }
+    for (int y = 0; y < height; y++) {
+      boolean last = y == height - 1;
+
+      // join neighbours in different sets, always on the last row
+      for (int s = 0; s < width; s++) {
+        parent[s] = s;
+      }
+      for (int x = 0; x + 1 < width; x++) {
+        int a = root(parent, set[x]);
+        int b = root(parent, set[x + 1]);
+        if (a != b && (last || rand.nextBoolean())) {
+          maze.setOpen(x, y, 0, true);
+          parent[b] = a;
+        }
+      }
+      for (int x = 0; x < width; x++) {
+        set[x] = root(parent, set[x]);
+      }
+      if (last) {
+        break;
+      }
+
+      // carry every set down into the next row at least once
+      Arrays.fill(count, 0);
+      Arrays.fill(seen, 0);
+      for (int x = 0; x < width; x++) {
+        count[set[x]]++;
+      }
+      for (int s = 0; s < width; s++) {
+        if (count[s] > 0) {
+          pick[s] = rand.nextInt(count[s]);
+        }
+      }
+      for (int x = 0; x < width; x++) {
+        int s = set[x];
+        down[x] = seen[s]++ == pick[s] || rand.nextBoolean();
+        if (down[x]) {
+          maze.setOpen(x, y, 1, true);
+        }
+      }
+
+      // renumber the carried sets and give every other cell a set of its own
+      Arrays.fill(label, -1);
+      int next = 0;
+      for (int x = 0; x < width; x++) {
+        if (down[x]) {
+          if (label[set[x]] < 0) {
+            label[set[x]] = next++;
+          }
+          set[x] = label[set[x]];
+        }
+      }
+      for (int x = 0; x < width; x++) {
+        if (!down[x]) {
+          set[x] = next++;
+        }
+      }
+    }
+
+    if (braid > 0) {
+      for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) {
+          for (int dir = 0; dir < 2; dir++) {
+            if (maze.inside(x + DX[dir], y + DY[dir]) && !maze.isOpen(x, y, dir)
+                && rand.nextDouble() < braid) {
+              maze.setOpen(x, y, dir, true);
+            }
+          }
+        }
+      }
+    }
+    return maze;
+  }
+
+  // finds the representative of a set in a union-find forest
+  static int root(int[] parent, int s) {
+    while (parent[s] != s) {
+      parent[s] = parent[parent[s]];
+      s = parent[s];
+    }
+    return s;
+  }
+
+  // determines whether (x, y) lies on the grid
+  boolean inside(int x, int y) {
+    return x >= 0 && y >= 0 && x < width && y < height;
+  }
+
+  // the index of the bit holding the wall on the given side of a cell
+  long bit(int x, int y, int dir) {
+    if (dir == 2) {
+      return 2L * ((long) y * width + x - 1);
+    }
+    else if (dir == 3) {
+      return 2L * ((long) (y - 1) * width + x) + 1;
+    }
+    else {
+      return 2L * ((long) y * width + x) + dir;
+    }
+  }
+
+  // determines whether a passage leads from (x, y) in the given direction
+  boolean isOpen(int x, int y, int dir) {
+    if (!inside(x + DX[dir], y + DY[dir])) {
+      return false;
+    }
+    long b = bit(x, y, dir);
+    return (walls[(int) (b >>> 6)] & (1L << b)) == 0;
+  }
+
+  // opens or closes the wall on the given side of (x, y)
+  void setOpen(int x, int y, int dir, boolean open) {
+    long b = bit(x, y, dir);
+    if (open) {
+      walls[(int) (b >>> 6)] &= ~(1L << b);
+    }
+    else {
+      walls[(int) (b >>> 6)] |= 1L << b;
+    }
+  }
+
+  // the direction leading from (x1, y1) to the adjacent cell (x2, y2)
+  int direction(int x1, int y1, int x2, int y2) {
+    for (int dir = 0; dir < 4; dir++) {
+      if (x1 + DX[dir] == x2 && y1 + DY[dir] == y2 && inside(x1, y1) && inside(x2, y2)) {
+        return dir;
+      }
+    }
+    throw new IllegalArgumentException("cells are not adjacent");
+  }
+
+  // opens the wall between two adjacent cells, or closes the passage between them
+  void toggleWall(int x1, int y1, int x2, int y2) {
+    int dir = direction(x1, y1, x2, y2);
+    setOpen(x1, y1, dir, !isOpen(x1, y1, dir));
+  }
+
+  // finds a shortest path between two cells by breadth first search over the
+  // whole grid, or an empty list if there is none
+  ArrayList<Posn> bfsPath(int sx, int sy, int tx, int ty) {
+    return search(sx, sy, tx, ty, false);
+  }
+
+  // finds a path between two cells by breadth first search (which finds a
+  // shortest one) or depth first search, recording in expanded how many
+  // cells were taken off the work list; empty if there is no path
+  ArrayList<Posn> search(int sx, int sy, int tx, int ty, boolean depthFirst) {
+    int[] from = new int[width * height];
+    int[] work = new int[width * height];
+    Arrays.fill(from, -1);
+    int start = sy * width + sx;
+    int goal = ty * width + tx;
+    int head = 0;
+    int tail = 0;
+    from[start] = start;
+    work[tail++] = start;
+    expanded = 0;
+    while (head < tail) {
+      int cell = depthFirst ? work[--tail] : work[head++];
+      expanded++;
+      if (cell == goal) {
+        break;
+      }
+      int x = cell % width;
+      int y = cell / width;
+      for (int dir = 0; dir < 4; dir++) {
+        if (isOpen(x, y, dir)) {
+          int next = (y + DY[dir]) * width + x + DX[dir];
+          if (from[next] < 0) {
+            from[next] = cell;
+            work[tail++] = next;
+          }
+        }
+      }
+    }
+
+    ArrayList<Posn> path = new ArrayList<Posn>();
+    if (from[goal] < 0) {
+      return path;
+    }
+    for (int cell = goal; cell != start; cell = from[cell]) {
+      path.add(new Posn(cell % width, cell / width));
+    }
+    path.add(new Posn(sx, sy));
+    Collections.reverse(path);
+    return path;
+  }
+}
+
+// represents a binary min-heap of longs, so that search keys can be queued
+// without boxing
+class LongHeap {
+  long[] items;
+  int size;
+
+  // constructor for an empty LongHeap
+  LongHeap() {
+    this.items = new long[64];
+    this.size = 0;
+  }
+
+  // determines if the heap is empty
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  // removes every item from the heap
+  void clear() {
+    size = 0;
+  }
+
+  // adds an item to the heap
+  void add(long item) {
+    if (size == items.length) {
+      items = Arrays.copyOf(items, size * 2);
+    }
+    int i = size++;
+    while (i > 0 && items[(i - 1) / 2] > item) {
+      items[i] = items[(i - 1) / 2];
+      i = (i - 1) / 2;
+    }
+    items[i] = item;
+  }
+
+  // removes and returns the smallest item in the heap
+  long remove() {
+    long top = items[0];
+    long last = items[--size];
+    int i = 0;
+    while (2 * i + 1 < size) {
+      int child = 2 * i + 1;
+      if (child + 1 < size && items[child + 1] < items[child]) {
+        child++;
+      }
+      if (items[child] >= last) {
+        break;
+      }
+      items[i] = items[child];
+      i = child;
+    }
+    items[i] = last;
+    return top;
+  }
+}
+
+// finds shortest paths through a GridMaze with hierarchical pathfinding (HPA*).
+// The grid is cut into square chunks; the border cells with a passage into
+// another chunk become the nodes of a small abstract graph, linked to the
+// other nodes of their chunk by precomputed distances inside it. A query
+// searches the abstract graph with A* and then refines only the chunks on the
+// route. Every open passage across a chunk border is its own node, so paths
+// are exactly as short as a flat search finds. Nodes with at most two
+// neighbors (about half of them in a braided maze) are never queued: a
+// search reaching one carries straight on to its other neighbor, or stops
+// there if it is a dead end. Queries and wall toggles share the search
+// arrays, so they are synchronized and run one at a time.
+class HierarchicalPathfinder {
+  GridMaze maze;
+  int chunkSize;
+  int chunksX;
+  int chunksY;
+  int slots;
+  int[][] nodes;
+  int[][] firstLink;
+  int[][] links;
+  int[][] exits;
+  int[] localDist;
+  boolean[] localVia;
+  boolean[] localNode;
+  boolean[] localCore;
+  int[] localDegree;
+  int[] queue;
+  int[] best;
+  int[] cameFrom;
+  int[] searched;
+  int search;
+  LongHeap open;
+  int startCell;
+  int goalCell;
+  int expansions;
+
+  // constructor for a pathfinder over the given maze that precomputes every chunk
+  HierarchicalPathfinder(GridMaze maze, int chunkSize) {
+    if (chunkSize < 1) {
+      throw new IllegalArgumentException("chunk size must be at least 1");
+    }
+    // distances inside a chunk are packed into 16 bits, so its area must stay
+    // below Short.MAX_VALUE
+    if (chunkSize > 181) {
+      throw new IllegalArgumentException("chunk sides are limited to 181 cells");
+    }
+    this.maze = maze;
+    this.chunkSize = chunkSize;
+    this.chunksX = (maze.width - 1) / chunkSize + 1;
+    this.chunksY = (maze.height - 1) / chunkSize + 1;
+    // node ids are chunk * slots + position in the chunk, then start and goal
+    this.slots = 4 * chunkSize;
+    if ((long) chunksX * chunksY * slots + 2 > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("chunks are too small for node ids to fit in an int");
+    }
+    this.nodes = new int[chunksX * chunksY][];
+    this.firstLink = new int[chunksX * chunksY][];
+    this.links = new int[chunksX * chunksY][];
+    this.exits = new int[chunksX * chunksY][];
+    this.localDist = new int[chunkSize * chunkSize];
+    this.localVia = new boolean[chunkSize * chunkSize];
+    this.localNode = new boolean[chunkSize * chunkSize];
+    this.localCore = new boolean[chunkSize * chunkSize];
+    this.localDegree = new int[chunkSize * chunkSize];
+    this.queue = new int[chunkSize * chunkSize];
+    this.best = new int[chunksX * chunksY * slots + 2];
+    this.cameFrom = new int[chunksX * chunksY * slots + 2];
+    this.searched = new int[chunksX * chunksY * slots + 2];
+    this.search = 0;
+    this.open = new LongHeap();
+    this.expansions = 0;
+    for (int c = 0; c < chunksX * chunksY; c++) {
+      buildChunk(c);
+    }
+  }
+
+  // the chunk holding the given cell
+  int chunkOf(int x, int y) {
+    return (y / chunkSize) * chunksX + (x / chunkSize);
+  }
+
+  // the leftmost column of a chunk
+  int originX(int c) {
+    return (c % chunksX) * chunkSize;
+  }
+
+  // the topmost row of a chunk
+  int originY(int c) {
+    return (c / chunksX) * chunkSize;
+  }
+
+  // the position of a cell in localDist while searching inside chunk c
+  int local(int c, int x, int y) {
+    return (y - originY(c)) * chunkSize + (x - originX(c));
+  }
+
+  // the id of the start of the current query in the abstract graph
+  int startId() {
+    return best.length - 2;
+  }
+
+  // the id of the goal of the current query in the abstract graph
+  int goalId() {
+    return best.length - 1;
+  }
+
+  // the cell an abstract node stands for
+  int cellOf(int id) {
+    if (id == startId()) {
+      return startCell;
+    }
+    else if (id == goalId()) {
+      return goalCell;
+    }
+    else {
+      return nodes[id / slots][id % slots];
+    }
+  }
+
+  // determines whether a passage leads from (x, y) into another chunk
+  boolean crossesChunk(int x, int y, int dir) {
+    return maze.isOpen(x, y, dir) 
+        && chunkOf(x, y) != chunkOf(x + GridMaze.DX[dir], y + GridMaze.DY[dir]);
+  }
+
+  // the id of the node across the chunk border from (x, y) in direction dir
+  int across(int x, int y, int dir) {
+    int nx = x + GridMaze.DX[dir];
+    int ny = y + GridMaze.DY[dir];
+    int other = chunkOf(nx, ny);
+    return other * slots + Arrays.binarySearch(nodes[other], ny * maze.width + nx);
+  }
+
+  // finds the nodes of a chunk and links each to the other nodes it can
+  // reach inside the chunk without passing through a third node
+  void buildChunk(int c) {
+    int x0 = originX(c);
+    int y0 = originY(c);
+    int x1 = Math.min(x0 + chunkSize, maze.width);
+    int y1 = Math.min(y0 + chunkSize, maze.height);
+
+    int[] found = new int[slots];
+    int n = 0;
+    for (int y = y0; y < y1; y++) {
+      boolean edgeRow = y == y0 || y == y1 - 1;
+      for (int x = x0; x < x1; x = (edgeRow || x == x1 - 1) ? x + 1 : x1 - 1) {
+        for (int dir = 0; dir < 4; dir++) {
+          if (crossesChunk(x, y, dir)) {
+            found[n++] = y * maze.width + x;
+            break;
+          }
+        }
+      }
+    }
+    for (int k = 0; k < n; k++) {
+      localNode[local(c, found[k] % maze.width, found[k] / maze.width)] = true;
+    }
+
+    // peel off the dead-end branches without a node, leaving in localCore
+    // the corridors between nodes, the only cells the links can run through
+    int head = 0;
+    int tail = 0;
+    for (int ly = 0; ly < y1 - y0; ly++) {
+      for (int lx = 0; lx < x1 - x0; lx++) {
+        int cell = ly * chunkSize + lx;
+        localDegree[cell] = 0;
+        for (int dir = 0; dir < 4; dir++) {
+          if (chunkOf(x0 + lx + GridMaze.DX[dir], y0 + ly + GridMaze.DY[dir]) == c
+              && maze.isOpen(x0 + lx, y0 + ly, dir)) {
+            localDegree[cell]++;
+          }
+        }
+        localCore[cell] = localNode[cell] || localDegree[cell] > 1;
+        if (!localCore[cell]) {
+          queue[tail++] = cell;
+        }
+      }
+    }
+    while (head < tail) {
+      int cell = queue[head++];
+      int lx = cell % chunkSize;
+      int ly = cell / chunkSize;
+      for (int dir = 0; dir < 4; dir++) {
+        int next = (ly + GridMaze.DY[dir]) * chunkSize + lx + GridMaze.DX[dir];
+        if (chunkOf(x0 + lx + GridMaze.DX[dir], y0 + ly + GridMaze.DY[dir]) == c
+            && maze.isOpen(x0 + lx, y0 + ly, dir) && localCore[next] 
+            && --localDegree[next] <= 1 && !localNode[next]) {
+          localCore[next] = false;
+          queue[tail++] = next;
+        }
+      }
+    }
+    int[] chunkNodes = Arrays.copyOf(found, n);
+
+    // a link whose shortest path runs through another node is never needed,
+    // since the two shorter links on either side of that node cover it
+    // each link packs the position of its target in the chunk above its length
+    int[] first = new int[n + 1];
+    int[] chunkLinks = new int[n * n];
+    int count = 0;
+    for (int i = 0; i < n; i++) {
+      first[i] = count;
+      localBfs(c, chunkNodes[i] % maze.width, chunkNodes[i] / maze.width, true);
+      for (int j = 0; j < n; j++) {
+        int at = local(c, chunkNodes[j] % maze.width, chunkNodes[j] / maze.width);
+        if (localDist[at] > 0 && !localVia[at]) {
+          chunkLinks[count++] = (j << 16) | localDist[at];
+        }
+      }
+    }
+    first[n] = count;
+
+    // exits[3 * i] is how many neighbors node i has, or 3 for more than two;
+    // with at most two, the rest of its entry holds each one as the index of
+    // a link, or as -1 - dir for a passage across the border in direction dir
+    int[] chunkExits = new int[3 * n];
+    for (int i = 0; i < n; i++) {
+      int x = chunkNodes[i] % maze.width;
+      int y = chunkNodes[i] / maze.width;
+      int degree = first[i + 1] - first[i];
+      for (int k = first[i]; k < first[i + 1] && degree <= 2; k++) {
+        chunkExits[3 * i + 1 + k - first[i]] = k;
+      }
+      for (int dir = 0; dir < 4; dir++) {
+        if (crossesChunk(x, y, dir)) {
+          if (++degree <= 2) {
+            chunkExits[3 * i + degree] = -1 - dir;
+          }
+        }
+      }
+      chunkExits[3 * i] = Math.min(degree, 3);
+    }
+
+    for (int v : chunkNodes) {
+      localNode[local(c, v % maze.width, v / maze.width)] = false;
+    }
+    nodes[c] = chunkNodes;
+    firstLink[c] = first;
+    links[c] = Arrays.copyOf(chunkLinks, count);
+    exits[c] = chunkExits;
+  }
+
+  // fills localDist with the distance from (sx, sy) to every cell of its
+  // chunk without leaving the chunk (-1 where there is none), and localVia
+  // with whether the shortest path found passes through another node. While
+  // a chunk is built the search can keep to its corridors, since no shortest
+  // path between two nodes enters a dead-end branch
+  void localBfs(int c, int sx, int sy, boolean coreOnly) {
+    int x0 = originX(c);
+    int y0 = originY(c);
+    int w = Math.min(chunkSize, maze.width - x0);
+    int h = Math.min(chunkSize, maze.height - y0);
+    Arrays.fill(localDist, -1);
+    int head = 0;
+    int tail = 0;
+    localDist[local(c, sx, sy)] = 0;
+    localVia[local(c, sx, sy)] = false;
+    queue[tail++] = local(c, sx, sy);
+    while (head < tail) {
+      int cell = queue[head++];
+      int lx = cell % chunkSize;
+      int ly = cell / chunkSize;
+      for (int dir = 0; dir < 4; dir++) {
+        int nx = lx + GridMaze.DX[dir];
+        int ny = ly + GridMaze.DY[dir];
+        int next = ny * chunkSize + nx;
+        if (nx >= 0 && ny >= 0 && nx < w && ny < h && localDist[next] < 0
+            && (!coreOnly || localCore[next]) && maze.isOpen(x0 + lx, y0 + ly, dir)) {
+          localDist[next] = localDist[cell] + 1;
+          localVia[next] = localVia[cell] || (localNode[cell] && localDist[cell] > 0);
+          queue[tail++] = next;
+        }
+      }
+    }
+  }
+
+  // opens the wall between two adjacent cells, or closes the passage between
+  // them, and rebuilds only the chunks on either side of it
+  synchronized void toggleWall(int x1, int y1, int x2, int y2) {
+    maze.toggleWall(x1, y1, x2, y2);
+    buildChunk(chunkOf(x1, y1));
+    if (chunkOf(x2, y2) != chunkOf(x1, y1)) {
+      buildChunk(chunkOf(x2, y2));
+    }
+  }
+
+  // the Manhattan distance from an abstract node to the goal
+  int heuristic(int id) {
+    int cell = cellOf(id);
+    return Math.abs(cell % maze.width - goalCell % maze.width) 
+        + Math.abs(cell / maze.width - goalCell / maze.width);
+  }
+
+  // records a shorter way to reach a node of the abstract graph. Outside
+  // the goal chunk a node with at most two neighbors, reached from one of
+  // them, is passed straight on to the other instead of being queued
+  void relax(int from, int to, int cost, int goalChunk) {
+    while (true) {
+      int g = best[from] + cost;
+      if (searched[to] == search && g >= best[to]) {
+        return;
+      }
+      searched[to] = search;
+      best[to] = g;
+      cameFrom[to] = from;
+
+      int c = to / slots;
+      int i = to % slots;
+      if (to >= startId() || c == goalChunk || exits[c][3 * i] > 2) {
+        open.add(((long) (g + heuristic(to)) << 32) | to);
+        return;
+      }
+      int next = -1;
+      int nextCost = 0;
+      for (int k = 1; k <= exits[c][3 * i]; k++) {
+        int exit = exits[c][3 * i + k];
+        int target;
+        int targetCost;
+        if (exit >= 0) {
+          target = c * slots + (links[c][exit] >>> 16);
+          targetCost = links[c][exit] & 0xFFFF;
+        }
+        else {
+          target = across(nodes[c][i] % maze.width, nodes[c][i] / maze.width, -1 - exit);
+          targetCost = 1;
+        }
+        if (target == from) {
+          from = -1;
+        }
+        else {
+          next = target;
+          nextCost = targetCost;
+        }
+      }
+      if (from >= 0) {
+        // reached some other way, e.g. from the start: search it normally
+        open.add(((long) (g + heuristic(to)) << 32) | to);
+        return;
+      }
+      if (next < 0) {
+        return;
+      }
+      from = to;
+      to = next;
+      cost = nextCost;
+    }
+  }
+
+  // finds a shortest path between two cells, or an empty list if there is none
+  synchronized ArrayList<Posn> path(int sx, int sy, int tx, int ty) {
+    if (!maze.inside(sx, sy) || !maze.inside(tx, ty)) {
+      throw new IllegalArgumentException("cells are not on the grid");
+    }
+    startCell = sy * maze.width + sx;
+    goalCell = ty * maze.width + tx;
+    int startChunk = chunkOf(sx, sy);
+    int goalChunk = chunkOf(tx, ty);
+    int start = startId();
+    int goal = goalId();
+
+    localBfs(startChunk, sx, sy, false);
+    int[] fromStart = localDist.clone();
+    localBfs(goalChunk, tx, ty, false);
+    int[] toGoal = localDist.clone();
+
+    search++;
+    open.clear();
+    searched[start] = search;
+    best[start] = 0;
+    open.add(((long) heuristic(start) << 32) | start);
+
+    while (!open.isEmpty()) {
+      long top = open.remove();
+      int u = (int) top;
+      if ((int) (top >>> 32) > best[u] + heuristic(u)) {
+        continue;
+      }
+      expansions++;
+      if (u == goal || startCell == goalCell) {
+        break;
+      }
+
+      int cell = cellOf(u);
+      int ux = cell % maze.width;
+      int uy = cell / maze.width;
+      int c = chunkOf(ux, uy);
+      if (u == start) {
+        for (int i = 0; i < nodes[c].length; i++) {
+          int v = nodes[c][i];
+          int d = fromStart[local(c, v % maze.width, v / maze.width)];
+          if (d > 0) {
+            relax(u, c * slots + i, d, goalChunk);
+          }
+        }
+      }
+      else {
+        int i = u % slots;
+        for (int k = firstLink[c][i]; k < firstLink[c][i + 1]; k++) {
+          relax(u, c * slots + (links[c][k] >>> 16), links[c][k] & 0xFFFF, goalChunk);
+        }
+      }
+      if (c == goalChunk && toGoal[local(c, ux, uy)] >= 0) {
+        relax(u, goal, toGoal[local(c, ux, uy)], goalChunk);
+      }
+      for (int dir = 0; dir < 4; dir++) {
+        if (crossesChunk(ux, uy, dir)) {
+          relax(u, across(ux, uy, dir), 1, goalChunk);
+        }
+      }
+    }
+
+    ArrayList<Posn> path = new ArrayList<Posn>();
+    if (startCell == goalCell) {
+      path.add(new Posn(sx, sy));
+      return path;
+    }
+    if (searched[goal] != search) {
+      return path;
+    }
+    ArrayList<Integer> route = new ArrayList<Integer>();
+    for (int v = goal; v != start; v = cameFrom[v]) {
+      route.add(cellOf(v));
+    }
+    route.add(startCell);
+    Collections.reverse(route);
+
+    path.add(new Posn(sx, sy));
+    for (int k = 1; k < route.size(); k++) {
+      refine(route.get(k - 1), route.get(k), path);
+    }
+    return path;
+  }
+
+  // appends the cells after a and up to b, where b is either across a chunk
+  // border from a or reachable from a inside their shared chunk
+  void refine(int a, int b, ArrayList<Posn> path) {
+    int x = a % maze.width;
+    int y = a / maze.width;
+    int bx = b % maze.width;
+    int by = b / maze.width;
+    int c = chunkOf(x, y);
+    if (c != chunkOf(bx, by)) {
+      path.add(new Posn(bx, by));
+      return;
+    }
+
+    localBfs(c, bx, by, false);
+    while (x != bx || y != by) {
+      for (int dir = 0; dir < 4; dir++) {
+        int nx = x + GridMaze.DX[dir];
+        int ny = y + GridMaze.DY[dir];
+        if (maze.isOpen(x, y, dir) && chunkOf(nx, ny) == c 
+            && localDist[local(c, nx, ny)] == localDist[local(c, x, y)] - 1) {
+          x = nx;
+          y = ny;
+          break;
+        }
+      }
+      path.add(new Posn(x, y));
+    }
+  }
+}
+
+// records request latencies and reports percentiles over the most recent
+// ones, kept in a fixed-size ring buffer so memory and the cost of a
+// percentile stay bounded however long the service runs
+class LatencyRecorder {
+  static int CAPACITY = 1024;
+
+  long[] samples;
+  long total;
+
+  // constructor for an empty LatencyRecorder
+  LatencyRecorder() {
+    this.samples = new long[CAPACITY];
+    this.total = 0;
+  }
+
+  // records one latency in nanoseconds, replacing the oldest once full
+  synchronized void record(long nanos) {
+    samples[(int) (total % CAPACITY)] = nanos;
+    total++;
+  }
+
+  // the number of latencies recorded so far
+  synchronized long count() {
+    return total;
+  }
+
+  // the latency below which the given percentage of the retained samples
+  // fall (nearest-rank), or 0 if nothing has been recorded
+  synchronized long percentile(double pct) {
+    int kept = (int) Math.min(total, CAPACITY);
+    if (kept == 0) {
+      return 0;
+    }
+    long[] sorted = Arrays.copyOf(samples, kept);
+    Arrays.sort(sorted);
+    int rank = (int) Math.ceil(pct / 100.0 * kept);
+    return sorted[Math.max(rank, 1) - 1];
+  }
+}
+
+// serves maze generation, solving and path queries over HTTP on the loopback
+// interface. Every request builds its own GridMaze from the width, height
+// and seed it carries, so requests never share maze state; the maze is the
+// same one new MazeWorld(width, height, seed) shows.
+//
+//   GET /generate?width=W&height=H&seed=S          walls in compact binary form
+//   GET /solve?width=W&height=H&seed=S&strategy=bfs|dfs
+//   GET /path?...&fromX=..&fromY=..&toX=..&toY=..   like /solve between two cells
+//   GET /stats                                     latency percentiles (microseconds)
+class MazeService {
+  // a 1000x1000 maze takes about 32 MB and a quarter of a second to generate
+  static int MAX_DIMENSION = 1000;
+
+  HttpServer server;
+  ExecutorService executor;
+  HashMap<String, LatencyRecorder> latencies;
+
+  // constructor for a MazeService listening on the given loopback port
+  // (0 picks any free port)
+  MazeService(int port) throws IOException {
+    this.server = HttpServer.create(
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    this.executor = perRequestExecutor();
+    this.latencies = new HashMap<String, LatencyRecorder>();
+    this.latencies.put("generate", new LatencyRecorder());
+    this.latencies.put("solve", new LatencyRecorder());
+    this.latencies.put("path", new LatencyRecorder());
+
+    this.server.setExecutor(this.executor);
+    this.server.createContext("/generate", exchange -> timed("generate", exchange));
+    this.server.createContext("/solve", exchange -> timed("solve", exchange));
+    this.server.createContext("/path", exchange -> timed("path", exchange));
+    this.server.createContext("/stats", exchange -> {
+      respond(exchange, 200, "application/json", stats());
+      exchange.close();
+    });
+  }
+
+  // runs each request on its own virtual thread where the JDK provides them,
+  // and on a fresh or reused platform thread otherwise
+  static ExecutorService perRequestExecutor() {
+    try {
+      return (ExecutorService) Executors.class
+          .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    }
+    catch (ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool();
+    }
+  }
+
+  // starts serving requests
+  void start() {
+    server.start();
+  }
+
+  // stops serving requests and releases the worker threads
+  void stop() {
+    server.stop(0);
+    executor.shutdown();
+  }
+
+  // the port this service is listening on
+  int port() {
+    return server.getAddress().getPort();
+  }
+
+  // handles one request to the named endpoint and records how long it took
+  void timed(String endpoint, HttpExchange exchange) throws IOException {
+    long start = System.nanoTime();
+    try {
+      HashMap<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+      if (endpoint.equals("generate")) {
+        generate(exchange, params);
+      }
+      else {
+        solve(exchange, params, endpoint.equals("path"));
+      }
+    }
+    catch (IllegalArgumentException e) {
+      respond(exchange, 400, "text/plain", e.getMessage());
+    }
+    finally {
+      // count the request before closing completes the response, so a
+      // client that has read it always sees it in /stats
+      latencies.get(endpoint).record(System.nanoTime() - start);
+      exchange.close();
+    }
+  }
+
+  // streams the walls of the requested maze back in compact binary form
+  void generate(HttpExchange exchange, HashMap<String, String> params) throws IOException {
+    GridMaze maze = buildMaze(params);
+    exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+    exchange.sendResponseHeaders(200, 0);
+    maze.writeWalls(exchange.getResponseBody());
+  }
+
+  // searches the requested maze and responds with the path found, either
+  // between the corners or between the cells named in the query
+  void solve(HttpExchange exchange, HashMap<String, String> params, boolean between)
+      throws IOException {
+    GridMaze maze = buildMaze(params);
+    String strategy = params.getOrDefault("strategy", "bfs");
+    if (!strategy.equals("bfs") && !strategy.equals("dfs")) {
+      throw new IllegalArgumentException("unknown strategy: " + strategy);
     }
 
-    if (!explored.isEmpty()) {
-      if (this.increment >= explored.size()) {
-        this.increment = 0;
-      }
-      explored.get(increment).color = Color.cyan;
+    Posn from = new Posn(0, 0);
+    Posn to = new Posn(maze.width - 1, maze.height - 1);
+    if (between) {
+      from = new Posn(intParam(params, "fromX", 0, maze.width - 1),
+          intParam(params, "fromY", 0, maze.height - 1));
+      to = new Posn(intParam(params, "toX", 0, maze.width - 1),
+          intParam(params, "toY", 0, maze.height - 1));
     }
 
-    if (allVertices.get(HEIGHT - 1).get(WIDTH - 1).color == Color.cyan) {
-      allVertices.get(HEIGHT - 1).get(WIDTH - 1).color = Color.blue;
-      reconstruct(allVertices.get(HEIGHT - 1).get(WIDTH - 1));
+    ArrayList<Posn> path = maze.search(from.x, from.y, to.x, to.y, strategy.equals("dfs"));
+
+    StringBuilder json = new StringBuilder();
+    json.append("{\"strategy\":\"").append(strategy)
+        .append("\",\"found\":").append(!path.isEmpty())
+        .append(",\"explored\":").append(maze.expanded)
+        .append(",\"path\":[");
+    for (int i = 0; i < path.size(); i++) {
+      if (i != 0) {
+        json.append(",");
+      }
+      json.append("[").append(path.get(i).x).append(",").append(path.get(i).y).append("]");
     }
+    json.append("]}");
+    respond(exchange, 200, "application/json", json.toString());
+  }
 
-    for (Vertex v : solution) {
-      explored.remove(v);
+  // builds a fresh maze from the width, height and seed in the query
+  GridMaze buildMaze(HashMap<String, String> params) {
+    int width = intParam(params, "width", 1, MAX_DIMENSION);
+    int height = intParam(params, "height", 1, MAX_DIMENSION);
+    if (!params.containsKey("seed")) {
+      throw new IllegalArgumentException("missing parameter: seed");
     }
-    
-    if (this.timer == 120) {
-      timer = 0;
-      seconds++;
+    try {
+      return GridMaze.kruskal(width, height, Long.parseLong(params.get("seed")));
     }
-    if (this.seconds == 60) {
-      minutes++;
-      seconds = 0;
+    catch (NumberFormatException e) {
+      throw new IllegalArgumentException("seed must be a number");
     }
-
-
-    this.allEdges = finalEdges;
-    count++;
-    increment++;
-    timer++;
   }
 
-  // handles keystrokes for the maze
-  public void onKeyEvent(String key) {
-    if (key.equals("b")) {
-      bfs(allVertices.get(0).get(0), 
-          allVertices.get(HEIGHT - 1).get(WIDTH - 1));
+  // reads a required integer parameter that must lie within [min, max]
+  int intParam(HashMap<String, String> params, String name, int min, int max) {
+    if (!params.containsKey(name)) {
+      throw new IllegalArgumentException("missing parameter: " + name);
     }
-    if (key.equals("d")) {
-      dfs(allVertices.get(0).get(0), 
-          allVertices.get(HEIGHT - 1).get(WIDTH - 1));
+    int value;
+    try {
+      value = Integer.parseInt(params.get(name));
+    }
+    catch (NumberFormatException e) {
+      throw new IllegalArgumentException(name + " must be a number");
     }
+    if (value < min || value > max) {
+      throw new IllegalArgumentException(name + " must be between " + min + " and " + max);
+    }
+    return value;
   }
 
-  // uses breadth first search to highlight the solution for the maze
-  void bfs(Vertex from, Vertex to) {
-    explored = new ArrayList<Vertex>();
-    solution = new ArrayList<Vertex>();
-    cameFromEdge = new HashMap<Posn, Posn>();
-    increment = 0;
-    timer = 0;
-    seconds = 0;
-    minutes = 0;
-    found = false;
-    for (ArrayList<Vertex> l : allVertices) {
-      for (Vertex v : l) {
-        v.color = Color.gray;
+  // splits a raw query string into its decoded name/value pairs
+  static HashMap<String, String> parseQuery(String query) {
+    HashMap<String, String> params = new HashMap<String, String>();
+    if (query == null) {
+      return params;
+    }
+    for (String pair : query.split("&")) {
+      int eq = pair.indexOf('=');
+      if (eq > 0) {
+        params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+            URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
       }
     }
-    allVertices.get(0).get(0).color = Color.blue;
-    allVertices.get(HEIGHT - 1).get(WIDTH - 1).color = Color.green;
-    searchHelp(from, to, new Queue<Vertex>());
+    return params;
   }
 
-  // uses depth first search to highlight the solution for the maze
-  void dfs(Vertex from, Vertex to) {
-    explored = new ArrayList<Vertex>();
-    solution = new ArrayList<Vertex>();
-    cameFromEdge = new HashMap<Posn, Posn>();
-    increment = 0;
-    timer = 0;
-    seconds = 0;
-    minutes = 0;
-    found = false;
-    for (ArrayList<Vertex> l : allVertices) {
-      for (Vertex v : l) {
-        v.color = Color.gray;
+  // the p50, p90 and p99 latency of every endpoint, in microseconds
+  String stats() {
+    StringBuilder json = new StringBuilder("{");
+    for (String endpoint : new String[] {"generate", "solve", "path"}) {
+      LatencyRecorder r = latencies.get(endpoint);
+      if (json.length() > 1) {
+        json.append(",");
       }
+      json.append("\"").append(endpoint).append("\":{\"count\":").append(r.count())
+          .append(",\"p50\":").append(r.percentile(50) / 1000)
+          .append(",\"p90\":").append(r.percentile(90) / 1000)
+          .append(",\"p99\":").append(r.percentile(99) / 1000)
+          .append("}");
     }
-    allVertices.get(0).get(0).color = Color.blue;
-    allVertices.get(HEIGHT - 1).get(WIDTH - 1).color = Color.green;
-    searchHelp(from, to, new Stack<Vertex>());
+    return json.append("}").toString();
   }
 
-  // helper for search algorithms
-  void searchHelp(Vertex from, Vertex to, ICollection<Vertex> workList) {
-    ArrayList<Vertex> alreadySeen = new ArrayList<Vertex>();
+  // writes a text response; it is sent chunked and only completes once the
+  // exchange is closed, so nothing the caller records afterwards can race it
+  static void respond(HttpExchange exchange, int status, String type, String text)
+      throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", type);
+    exchange.sendResponseHeaders(status, 0);
+    exchange.getResponseBody().write(text.getBytes(StandardCharsets.UTF_8));
+  }
 
-    workList.add(from);
-    explored.add(from);
-    while (!workList.isEmpty()) {
-      Vertex next = workList.remove();
-      if (next.equals(to)) {
-        found = true;
-        while (!workList.isEmpty()) {
-          workList.remove();
-        }
+  // runs the service on the port given as the first argument (default 8080)
+  public static void main(String[] args) throws IOException {
+    MazeService service = new MazeService(args.length > 0 ? Integer.parseInt(args[0]) : 8080);
+    service.start();
+    System.out.println("MazeService listening on 127.0.0.1:" + service.port());
+  }
+}
+
+// benchmarks for the maze, run from the command line
+class MazeBenchmarks {
+
+  // runs every benchmark
+  public static void main(String[] args) {
+    renderBenchmark(new int[] {20, 40, 80}, 200);
+    replanBenchmark(new int[] {20, 40, 80, 160}, 100);
+
+    // pass sizes to benchmark larger mazes. 10000 runs in -Xmx1g (the
+    // pathfinder keeps about 510 MB) and takes about five minutes: 12 s to
+    // generate, 80 s to preprocess, then 2 s per hierarchical query against
+    // 7 s per flat breadth first search
+    int[] sizes = {1000, 2000, 4000};
+    if (args.length > 0) {
+      sizes = new int[args.length];
+      for (int i = 0; i < args.length; i++) {
+        sizes[i] = Integer.parseInt(args[i]);
       }
-      else if (alreadySeen.contains(next)) {
-        // do nothing
+    }
+    hpaBenchmark(sizes, 32, 0.05, 20);
+  }
+
+  // compares the wall images drawn per frame by one-image-per-edge rendering
+  // with merged wall runs, and times makeScene on fully carved mazes
+  static void renderBenchmark(int[] sizes, int frames) {
+    System.out.println("render: size, wall images/frame (per edge), "
+        + "wall images/frame (runs), makeScene us/frame");
+    for (int n : sizes) {
+      MazeWorld world = new MazeWorld(n, n, 1);
+      for (int i = 0; i < n; i++) {
+        world.onTick();
       }
-      else {
-        for (Edge e : next.outEdges) {
-          workList.add(e.to);
-          explored.add(e.to);
-          cameFromEdge.putIfAbsent(e.to.position, e.from.position);
-        }        
-        alreadySeen.add(next);
+      long start = System.nanoTime();
+      for (int i = 0; i < frames; i++) {
+        world.makeScene();
       }
+      long perFrame = (System.nanoTime() - start) / frames / 1000;
+      System.out.println("render: " + n + "x" + n + ", " + world.allEdges.size() + ", " 
+          + world.wallRuns().size() + ", " + perFrame);
     }
   }
 
-  // highlights the shortest path after search
-  void reconstruct(Vertex v) {
-    solution.add(v);
-    explored.remove(v);
-
-    if (v != allVertices.get(0).get(0)) {
-      for (int i = 0; i < allVertices.size(); i++) {
-        for (int j = 0; j < allVertices.get(i).size(); j++) {
-          if (allVertices.get(i).get(j).position.equals(cameFromEdge.get(v.position))) {
-            reconstruct(allVertices.get(i).get(j));
-          }
-        }
+  // compares toggling a wall and repairing an LPA* search after it with
+  // searching the whole maze again from scratch, as bfs does today
+  static void replanBenchmark(int[] sizes, int toggles) {
+    System.out.println("replan: size, toggle us, LPA* repair us, LPA* repair expansions, "
+        + "full bfs us, full bfs expanded");
+    for (int n : sizes) {
+      MazeWorld world = new MazeWorld(n, n, 1);
+      Vertex start = world.allVertices.get(0).get(0);
+      Vertex goal = world.allVertices.get(n - 1).get(n - 1);
+      LpaStarSolver solver = new LpaStarSolver(world, start, goal);
+      solver.computeShortestPath();
+
+      Random rand = new Random(2);
+      long toggleNanos = 0;
+      long repairNanos = 0;
+      long repairExpansions = 0;
+      long fullNanos = 0;
+      long fullExpanded = 0;
+      for (int i = 0; i < toggles; i++) {
+        int x = rand.nextInt(n - 1);
+        int y = rand.nextInt(n - 1);
+        Vertex a = world.allVertices.get(y).get(x);
+        Vertex b = rand.nextBoolean() ? world.allVertices.get(y).get(x + 1)
+            : world.allVertices.get(y + 1).get(x);
+        long t0 = System.nanoTime();
+        world.toggleWall(a, b);
+        toggleNanos += System.nanoTime() - t0;
+
+        int before = solver.expansions;
+        long t1 = System.nanoTime();
+        solver.wallChanged(a, b);
+        solver.computeShortestPath();
+        repairNanos += System.nanoTime() - t1;
+        repairExpansions += solver.expansions - before;
+
+        world.explored = new ArrayList<Vertex>();
+        world.cameFromEdge = new HashMap<Posn, Posn>();
+        long t2 = System.nanoTime();
+        world.searchHelp(start, goal, new Queue<Vertex>());
+        fullNanos += System.nanoTime() - t2;
+        fullExpanded += world.expanded;
       }
+      System.out.println("replan: " + n + "x" + n + ", " + toggleNanos / toggles / 1000 + ", "
+          + repairNanos / toggles / 1000 + ", " + repairExpansions / toggles + ", " 
+          + fullNanos / toggles / 1000 + ", " + fullExpanded / toggles);
     }
   }
 
-  // creates the scene
-  public WorldScene makeScene() {
-    WorldScene scene = new WorldScene((WIDTH * VERTEX_SIZE) + 200, HEIGHT * VERTEX_SIZE);
-
-    for (ArrayList<Vertex> l : allVertices) {
-      for (Vertex v : l) {
-        scene.placeImageXY(v.drawVertex(), (v.x * VERTEX_SIZE) + (VERTEX_SIZE / 2), 
-            (v.y * VERTEX_SIZE) + (VERTEX_SIZE / 2));
+  // compares hierarchical queries between far-apart cells of large braided
+  // mazes with a flat breadth first search, and times rebuilding after a
+  // wall changes
+  static void hpaBenchmark(int[] sizes, int chunkSize, double braid, int queries) {
+    System.out.println("hpa: size, generate ms, preprocess ms, nodes, queued nodes, "
+        + "hpa query us, hpa expansions, flat bfs us, wall update us, mismatches");
+    for (int n : sizes) {
+      long t0 = System.nanoTime();
+      GridMaze maze = GridMaze.generate(n, n, 1, braid);
+      long t1 = System.nanoTime();
+      HierarchicalPathfinder finder = new HierarchicalPathfinder(maze, chunkSize);
+      long t2 = System.nanoTime();
+      long nodes = 0;
+      long queued = 0;
+      for (int[] chunkExits : finder.exits) {
+        nodes += chunkExits.length / 3;
+        for (int i = 0; i < chunkExits.length; i += 3) {
+          if (chunkExits[i] > 2) {
+            queued++;
+          }
+        }
       }
-    }
 
-    for (Edge e : allEdges) {
-      if (e.to.x == e.from.x) {
-        scene.placeImageXY(
-            new RectangleImage(VERTEX_SIZE, VERTEX_SIZE / 10, OutlineMode.SOLID, Color.black),
-            (e.to.x * VERTEX_SIZE) + (VERTEX_SIZE / 2),
-            ((e.to.y + e.from.y) * VERTEX_SIZE / 2) + (VERTEX_SIZE / 2));
+      Random rand = new Random(3);
+      for (int i = 0; i < 3; i++) {
+        finder.path(0, 0, n - 1, n - 1);
+        maze.bfsPath(0, 0, n - 1, n - 1);
       }
-      else {
-        scene.placeImageXY(
-            new RectangleImage(VERTEX_SIZE / 10, VERTEX_SIZE, OutlineMode.SOLID, Color.black),
-            ((e.to.x + e.from.x) * VERTEX_SIZE / 2) + (VERTEX_SIZE * 1 / 2),
-            (e.to.y * VERTEX_SIZE) + (VERTEX_SIZE / 2));
+      long hpaNanos = 0;
+      long flatNanos = 0;
+      int mismatches = 0;
+      int expansionsBefore = finder.expansions;
+      for (int i = 0; i < queries; i++) {
+        int sx = rand.nextInt(n / 4);
+        int sy = rand.nextInt(n / 4);
+        int tx = n - 1 - rand.nextInt(n / 4);
+        int ty = n - 1 - rand.nextInt(n / 4);
+        long q0 = System.nanoTime();
+        ArrayList<Posn> hpa = finder.path(sx, sy, tx, ty);
+        long q1 = System.nanoTime();
+        ArrayList<Posn> flat = maze.bfsPath(sx, sy, tx, ty);
+        long q2 = System.nanoTime();
+        hpaNanos += q1 - q0;
+        flatNanos += q2 - q1;
+        if (hpa.size() != flat.size()) {
+          mismatches++;
+        }
       }
-    }
-    
-    String secondsString = "";
 
-    if (this.seconds < 10) {
-      secondsString = "0" + Integer.toString(this.seconds);
-    }
-    else {
-      secondsString = Integer.toString(this.seconds);
-    }
-    
-    scene.placeImageXY(new TextImage("Time : " + Integer.toString(this.minutes) + ":"
-        + secondsString, 20, FontStyle.BOLD, Color.black), 
-        (WIDTH * VERTEX_SIZE) + 100, HEIGHT * VERTEX_SIZE / 8);
+      long updateNanos = 0;
+      for (int i = 0; i < queries; i++) {
+        int x = rand.nextInt(n - 1);
+        int y = rand.nextInt(n - 1);
+        long u0 = System.nanoTime();
+        finder.toggleWall(x, y, x + 1, y);
+        updateNanos += System.nanoTime() - u0;
+      }
 
-    return scene;
+      System.out.println("hpa: " + n + "x" + n + ", " + (t1 - t0) / 1000000 + ", " 
+          + (t2 - t1) / 1000000 + ", " + nodes + ", " + queued + ", " 
+          + hpaNanos / queries / 1000 + ", "
+          + (finder.expansions - expansionsBefore) / queries + ", " 
+          + flatNanos / queries / 1000 + ", " + updateNanos / queries / 1000 + ", " 
+          + mismatches);
+    }
   }
 }
 
@@ -445,8 +2227,6 @@ class ExamplesMyWorldProgram {
 
   WorldScene scene;
 
-  HashMap<Posn, Posn> map;
-
   Vertex v1;
   Vertex v2;
   Vertex v3;
@@ -473,11 +2253,6 @@ class ExamplesMyWorldProgram {
     scene = new WorldScene((MazeWorld.WIDTH * MazeWorld.VERTEX_SIZE) + 200, 
         MazeWorld.HEIGHT * MazeWorld.VERTEX_SIZE);
 
-    map = new HashMap<Posn, Posn>();
-    map.put(new Posn(0, 0), new Posn(0, 0));
-    map.put(new Posn(1, 0), new Posn(1, 1));
-    map.put(new Posn(1, 1), new Posn(1, 1));
-
     v1 = new Vertex(0, 0);
     v2 = new Vertex(0, 1);
     v3 = new Vertex(0, 0);
@@ -540,13 +2315,15 @@ class ExamplesMyWorldProgram {
     t.checkExpect(queue1.contents.contains(v2), true);
   }
 
-  // Tests the find method
-  void testFind(Tester t) {
-    initialConditions();
+  // Tests the root method of GridMaze, which both maze generators use
+  void testRoot(Tester t) {
+    int[] parent = {0, 0, 1, 3, 2};
 
-    t.checkExpect(world.find(map, new Posn(0, 0)), new Posn(0, 0));
-    t.checkExpect(world.find(map, new Posn(1, 1)), new Posn(1, 1));
-    t.checkExpect(world.find(map, new Posn(1, 0)), new Posn(1, 1));
+    t.checkExpect(GridMaze.root(parent, 0), 0);
+    t.checkExpect(GridMaze.root(parent, 3), 3);
+    t.checkExpect(GridMaze.root(parent, 4), 0);
+    // the path from 4 has been halved on the way
+    t.checkExpect(parent[4], 1);
   }
 
   // Tests the onKeyEvent method
@@ -661,6 +2438,7 @@ class ExamplesMyWorldProgram {
         world.allVertices.get(MazeWorld.HEIGHT - 1).get(MazeWorld.WIDTH - 1), new Queue<Vertex>());
     t.checkExpect(world.found, true);
     t.checkExpect(world, world2);
+    t.checkExpect(world.expanded, alreadySeen.size());
   }
 
   // Tests the reconstruct method
@@ -699,43 +2477,674 @@ class ExamplesMyWorldProgram {
 
   //Tests the makeScene method
   void testMakeScene(Tester t) {
-    initialConditions();
+    // a 3x2 maze whose only walls are below (0, 0) and (1, 0) and between
+    // (1, 1) and (2, 1)
+    ArrayList<ArrayList<Vertex>> vertices = new ArrayList<ArrayList<Vertex>>();
+    for (int y = 0; y < 2; y++) {
+      ArrayList<Vertex> row = new ArrayList<Vertex>();
+      for (int x = 0; x < 3; x++) {
+        row.add(new Vertex(x, y));
+      }
+      vertices.add(row);
+    }
+    vertices.get(0).get(0).color = Color.blue;
+    vertices.get(1).get(2).color = Color.green;
+    MazeWorld maze = new MazeWorld(vertices, new ArrayList<Vertex>(), 
+        new ArrayList<Vertex>());
+    maze.allEdges.add(new Edge(vertices.get(0).get(0), vertices.get(1).get(0), 0));
+    maze.allEdges.add(new Edge(vertices.get(1).get(0), vertices.get(0).get(0), 0));
+    maze.allEdges.add(new Edge(vertices.get(0).get(1), vertices.get(1).get(1), 0));
+    maze.allEdges.add(new Edge(vertices.get(1).get(1), vertices.get(0).get(1), 0));
+    maze.allEdges.add(new Edge(vertices.get(1).get(1), vertices.get(1).get(2), 0));
+    maze.allEdges.add(new Edge(vertices.get(1).get(2), vertices.get(1).get(1), 0));
+    maze.computeWallRuns();
+
+    t.checkExpect(maze.wallRuns(), new ArrayList<WallRun>(Arrays.asList(
+        new WallRun(true, 0, 0, 2), new WallRun(false, 1, 1, 1))));
+
+    WorldScene expected = new WorldScene(3 * 30 + 200, 2 * 30);
+    expected.placeImageXY(new RectangleImage(30, 30, OutlineMode.SOLID, Color.blue), 15, 15);
+    expected.placeImageXY(new RectangleImage(30, 30, OutlineMode.SOLID, Color.gray), 45, 15);
+    expected.placeImageXY(new RectangleImage(30, 30, OutlineMode.SOLID, Color.gray), 75, 15);
+    expected.placeImageXY(new RectangleImage(30, 30, OutlineMode.SOLID, Color.gray), 15, 45);
+    expected.placeImageXY(new RectangleImage(30, 30, OutlineMode.SOLID, Color.gray), 45, 45);
+    expected.placeImageXY(new RectangleImage(30, 30, OutlineMode.SOLID, Color.green), 75, 45);
+    expected.placeImageXY(new RectangleImage(60, 3, OutlineMode.SOLID, Color.black), 30, 30);
+    expected.placeImageXY(new RectangleImage(3, 30, OutlineMode.SOLID, Color.black), 60, 45);
+    expected.placeImageXY(new TextImage("Time : 0:00", 20, FontStyle.BOLD, Color.black), 
+        190, 7);
+    t.checkExpect(maze.makeScene(), expected);
+
+    // opening the wall below (1, 0) shortens the horizontal run to one cell
+    maze.toggleWall(vertices.get(0).get(1), vertices.get(1).get(1));
+    maze.seconds = 5;
+    expected = new WorldScene(3 * 30 + 200, 2 * 30);
+    expected.placeImageXY(new RectangleImage(30, 30, OutlineMode.SOLID, Color.blue), 15, 15);
+    expected.placeImageXY(new RectangleImage(30, 30, OutlineMode.SOLID, Color.gray), 45, 15);
+    expected.placeImageXY(new RectangleImage(30, 30, OutlineMode.SOLID, Color.gray), 75, 15);
+    expected.placeImageXY(new RectangleImage(30, 30, OutlineMode.SOLID, Color.gray), 15, 45);
+    expected.placeImageXY(new RectangleImage(30, 30, OutlineMode.SOLID, Color.gray), 45, 45);
+    expected.placeImageXY(new RectangleImage(30, 30, OutlineMode.SOLID, Color.green), 75, 45);
+    expected.placeImageXY(new RectangleImage(30, 3, OutlineMode.SOLID, Color.black), 15, 30);
+    expected.placeImageXY(new RectangleImage(3, 30, OutlineMode.SOLID, Color.black), 60, 45);
+    expected.placeImageXY(new TextImage("Time : 0:05", 20, FontStyle.BOLD, Color.black), 
+        190, 7);
+    t.checkExpect(maze.makeScene(), expected);
+  }
+
+
+  // Tests that seeded mazes are reproducible and sized per instance
+  void testSeededMazeWorld(Tester t) throws IOException {
+    MazeWorld a = new MazeWorld(7, 4, 42);
+    MazeWorld b = new MazeWorld(7, 4, 42);
+
+    t.checkExpect(a.width, 7);
+    t.checkExpect(a.height, 4);
+    t.checkExpect(a.allVertices.size(), 4);
+    t.checkExpect(a.allVertices.get(0).size(), 7);
+
+    ByteArrayOutputStream wallsA = new ByteArrayOutputStream();
+    ByteArrayOutputStream wallsB = new ByteArrayOutputStream();
+    a.writeWalls(wallsA);
+    b.writeWalls(wallsB);
+    t.checkExpect(Arrays.equals(wallsA.toByteArray(), wallsB.toByteArray()), true);
+  }
+
+  // Tests that a maze at the service's size cap generates quickly and
+  // is still a spanning tree
+  void testGenerateAtCap(Tester t) {
+    int n = MazeService.MAX_DIMENSION;
+    GridMaze.kruskal(n, n, 3);
+    long start = System.nanoTime();
+    GridMaze maze = GridMaze.kruskal(n, n, 17);
+    long elapsed = System.nanoTime() - start;
+
+    t.checkExpect(elapsed < 2000000000L, true);
+    t.checkExpect(passages(maze), n * n - 1);
+    t.checkExpect(maze.bfsPath(0, 0, n - 1, n - 1).isEmpty(), false);
+  }
+
+  // tests for kruskal: the compact generator carves the maze MazeWorld does
+  void testKruskal(Tester t) throws IOException {
+    for (long seed = 0; seed < 5; seed++) {
+      MazeWorld world = new MazeWorld(13, 7, seed);
+      GridMaze maze = GridMaze.kruskal(13, 7, seed);
+      t.checkExpect(Arrays.equals(maze.walls, GridMaze.fromWorld(world).walls), true);
+
+      ByteArrayOutputStream expected = new ByteArrayOutputStream();
+      world.writeWalls(expected);
+      ByteArrayOutputStream actual = new ByteArrayOutputStream();
+      maze.writeWalls(actual);
+      t.checkExpect(Arrays.equals(actual.toByteArray(), expected.toByteArray()), true);
+    }
+    t.checkExpect(passages(GridMaze.kruskal(1, 1, 4)), 0);
+    t.checkExpect(passages(GridMaze.kruskal(5, 1, 4)), 4);
+  }
+
+  // tests for search: breadth and depth first search on a compact grid
+  void testSearch(Tester t) {
+    GridMaze maze = new GridMaze(3, 2);
+    maze.setOpen(0, 0, 0, true);
+    maze.setOpen(1, 0, 0, true);
+    maze.setOpen(0, 0, 1, true);
+    maze.setOpen(2, 0, 1, true);
+    maze.setOpen(0, 1, 0, true);
+    maze.setOpen(1, 1, 0, true);
+    ArrayList<Posn> path = new ArrayList<Posn>(Arrays.asList(new Posn(0, 0),
+        new Posn(1, 0), new Posn(2, 0), new Posn(2, 1)));
+    t.checkExpect(maze.search(0, 0, 2, 1, false), path);
+    t.checkExpect(maze.expanded, 6);
+    t.checkExpect(maze.search(0, 0, 2, 1, true), new ArrayList<Posn>(Arrays.asList(
+        new Posn(0, 0), new Posn(0, 1), new Posn(1, 1), new Posn(2, 1))));
+    t.checkExpect(maze.expanded, 4);
+    t.checkExpect(maze.search(1, 1, 1, 1, true), new ArrayList<Posn>(Arrays.asList(
+        new Posn(1, 1))));
+    t.checkExpect(maze.expanded, 1);
+    maze.setOpen(0, 1, 0, false);
+    maze.setOpen(2, 0, 1, false);
+    t.checkExpect(maze.search(0, 0, 2, 1, false), new ArrayList<Posn>());
+  }
+
+  // Tests the pathTo method
+  void testPathTo(Tester t) {
+    MazeWorld maze = new MazeWorld(6, 5, 3);
+    Vertex from = maze.allVertices.get(0).get(0);
+    Vertex to = maze.allVertices.get(4).get(5);
+
+    t.checkExpect(maze.pathTo(from, to), new ArrayList<Vertex>());
+
+    maze.searchHelp(from, to, new Queue<Vertex>());
+    ArrayList<Vertex> path = maze.pathTo(from, to);
+    t.checkExpect(path.get(0), from);
+    t.checkExpect(path.get(path.size() - 1), to);
+    for (int i = 1; i < path.size(); i++) {
+      t.checkExpect(maze.hasPassage(path.get(i - 1), path.get(i).x, path.get(i).y), true);
+    }
+    t.checkExpect(maze.solution.isEmpty(), true);
+  }
+
+  // Tests the writeWalls method
+  void testWriteWalls(Tester t) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new MazeWorld(2, 1, 5).writeWalls(out);
+
+    // the only passage joins the two cells, every other side is a wall
+    t.checkExpect(Arrays.equals(out.toByteArray(), 
+        new byte[] {0, 0, 0, 2, 0, 0, 0, 1, 14}), true);
+
+    out = new ByteArrayOutputStream();
+    new MazeWorld(5, 3, 5).writeWalls(out);
+    t.checkExpect(out.size(), 8 + 4);
+  }
+
+  // Tests the LatencyRecorder class
+  void testLatencyRecorder(Tester t) {
+    LatencyRecorder r = new LatencyRecorder();
+
+    t.checkExpect(r.percentile(50), 0L);
+    for (long i = 100; i >= 1; i--) {
+      r.record(i);
+    }
+    t.checkExpect(r.count(), 100L);
+    t.checkExpect(r.percentile(50), 50L);
+    t.checkExpect(r.percentile(90), 90L);
+    t.checkExpect(r.percentile(99), 99L);
+    t.checkExpect(r.percentile(100), 100L);
+
+    // once full, only the most recent CAPACITY latencies are kept
+    for (long i = 1; i <= 2 * LatencyRecorder.CAPACITY; i++) {
+      r.record(1000000 + i);
+    }
+    t.checkExpect(r.count(), 100L + 2 * LatencyRecorder.CAPACITY);
+    t.checkExpect(r.percentile(0), 1000001L + LatencyRecorder.CAPACITY);
+    t.checkExpect(r.percentile(100), 1000000L + 2 * LatencyRecorder.CAPACITY);
+    t.checkExpect(r.samples.length, LatencyRecorder.CAPACITY);
+  }
+
+  // Tests the parseQuery method
+  void testParseQuery(Tester t) {
+    HashMap<String, String> params = new HashMap<String, String>();
+
+    t.checkExpect(MazeService.parseQuery(null), params);
+    params.put("width", "4");
+    params.put("strategy", "d s");
+    t.checkExpect(MazeService.parseQuery("width=4&strategy=d%20s&junk"), params);
+  }
+
+  // sends a GET request to the given service and returns the connection
+  HttpURLConnection get(MazeService service, String path) throws IOException {
+    return (HttpURLConnection) new URL("http://127.0.0.1:" + service.port() + path)
+        .openConnection();
+  }
+
+  // Tests the MazeService endpoints against localhost
+  void testMazeService(Tester t) throws Exception {
+    MazeService service = new MazeService(0);
+    service.start();
+    try {
+      MazeWorld local = new MazeWorld(9, 6, 11);
+      ByteArrayOutputStream walls = new ByteArrayOutputStream();
+      local.writeWalls(walls);
+
+      HttpURLConnection c = get(service, "/generate?width=9&height=6&seed=11");
+      t.checkExpect(c.getResponseCode(), 200);
+      t.checkExpect(Arrays.equals(c.getInputStream().readAllBytes(), walls.toByteArray()), 
+          true);
+
+      // the maze is a tree, so the depth first path is the same one the
+      // world finds
+      Vertex from = local.allVertices.get(0).get(0);
+      Vertex to = local.allVertices.get(5).get(8);
+      local.searchHelp(from, to, new Stack<Vertex>());
+      StringBuilder expected = new StringBuilder();
+      for (Vertex v : local.pathTo(from, to)) {
+        expected.append(expected.length() == 0 ? "" : ",")
+            .append("[" + v.x + "," + v.y + "]");
+      }
+      GridMaze grid = GridMaze.kruskal(9, 6, 11);
+      grid.search(0, 0, 8, 5, true);
+      c = get(service, "/solve?width=9&height=6&seed=11&strategy=dfs");
+      t.checkExpect(c.getResponseCode(), 200);
+      t.checkExpect(new String(c.getInputStream().readAllBytes(), StandardCharsets.UTF_8),
+          "{\"strategy\":\"dfs\",\"found\":true,\"explored\":" + grid.expanded 
+          + ",\"path\":[" + expected + "]}");
+
+      c = get(service, "/path?width=9&height=6&seed=11&fromX=3&fromY=3&toX=3&toY=3");
+      t.checkExpect(new String(c.getInputStream().readAllBytes(), StandardCharsets.UTF_8),
+          "{\"strategy\":\"bfs\",\"found\":true,\"explored\":1,\"path\":[[3,3]]}");
+
+      t.checkExpect(get(service, "/solve?width=0&height=6&seed=11").getResponseCode(), 400);
+      t.checkExpect(get(service, "/solve?width=9&height=6").getResponseCode(), 400);
+      t.checkExpect(get(service, "/solve?width=9&height=6&seed=1&strategy=x")
+          .getResponseCode(), 400);
+
+      // concurrent requests each get their own maze
+      ExecutorService clients = Executors.newFixedThreadPool(8);
+      ArrayList<Future<byte[]>> results = new ArrayList<Future<byte[]>>();
+      for (int i = 0; i < 16; i++) {
+        results.add(clients.submit(() -> 
+            get(service, "/generate?width=9&height=6&seed=11").getInputStream()
+            .readAllBytes()));
+      }
+      for (Future<byte[]> f : results) {
+        t.checkExpect(Arrays.equals(f.get(), walls.toByteArray()), true);
+      }
+      clients.shutdown();
+
+      String stats = new String(get(service, "/stats").getInputStream().readAllBytes(),
+          StandardCharsets.UTF_8);
+      t.checkExpect(stats.startsWith("{\"generate\":{\"count\":17,"), true);
+      t.checkExpect(stats.contains("\"solve\":{\"count\":4,"), true);
+    }
+    finally {
+      service.stop();
+    }
+  }
+
+  // Tests the computeWallRuns method
+  void testComputeWallRuns(Tester t) {
+    MazeWorld maze = new MazeWorld(6, 4, 9);
+
+    // before carving every interior grid line is one unbroken wall
+    t.checkExpect(maze.wallRuns().size(), (6 - 1) + (4 - 1));
+    for (WallRun r : maze.wallRuns()) {
+      t.checkExpect(r.length, r.horizontal ? 6 : 4);
+    }
+
+    for (int i = 0; i < 6; i++) {
+      maze.onTick();
+    }
+
+    // after carving the runs cover each remaining wall exactly once
+    int walls = checkWallRuns(t, maze);
+    t.checkExpect(walls, (6 - 1) * 4 + (4 - 1) * 6 - (6 * 4 - 1));
+    t.checkExpect(walls, maze.allEdges.size() / 2);
+    t.checkExpect(maze.wallRuns().size() <= walls, true);
+  }
+
+  // checks that the wall runs of a fully carved maze cover every wall
+  // segment and no passage, and returns how many segments they cover
+  int checkWallRuns(Tester t, MazeWorld maze) {
+    int walls = 0;
+    for (WallRun r : maze.wallRuns()) {
+      walls += r.length;
+      for (int i = 0; i < r.length; i++) {
+        if (r.horizontal) {
+          t.checkExpect(maze.hasPassage(maze.allVertices.get(r.y).get(r.x + i), 
+              r.x + i, r.y + 1), false);
+        }
+        else {
+          t.checkExpect(maze.hasPassage(maze.allVertices.get(r.y + i).get(r.x), 
+              r.x + 1, r.y + i), false);
+        }
+      }
+    }
+
+    int passages = 0;
+    for (ArrayList<Vertex> l : maze.allVertices) {
+      for (Vertex v : l) {
+        passages += v.outEdges.size();
+      }
+    }
+    t.checkExpect(walls, (maze.width - 1) * maze.height + (maze.height - 1) * maze.width
+        - passages / 2);
+    return walls;
+  }
+
+  // Tests the drawRun, centerX and centerY methods
+  void testDrawRun(Tester t) {
+    WallRun h = new WallRun(true, 2, 1, 3);
+    WallRun v = new WallRun(false, 0, 0, 1);
+
+    t.checkExpect(h.drawRun(), new RectangleImage(3 * MazeWorld.VERTEX_SIZE, 
+        MazeWorld.VERTEX_SIZE / 10, OutlineMode.SOLID, Color.black));
+    t.checkExpect(h.centerX(), (2 * MazeWorld.VERTEX_SIZE) + (3 * MazeWorld.VERTEX_SIZE / 2));
+    t.checkExpect(h.centerY(), 2 * MazeWorld.VERTEX_SIZE);
+    t.checkExpect(v.drawRun(), new RectangleImage(MazeWorld.VERTEX_SIZE / 10, 
+        MazeWorld.VERTEX_SIZE, OutlineMode.SOLID, Color.black));
+    t.checkExpect(v.centerX(), MazeWorld.VERTEX_SIZE);
+    t.checkExpect(v.centerY(), MazeWorld.VERTEX_SIZE / 2);
+  }
+
+  // the length of the shortest path between two vertices, found by a fresh
+  // breadth first search (0 if there is none)
+  int bfsLength(MazeWorld maze, Vertex from, Vertex to) {
+    maze.explored = new ArrayList<Vertex>();
+    maze.cameFromEdge = new HashMap<Posn, Posn>();
+    maze.searchHelp(from, to, new Queue<Vertex>());
+    return maze.pathTo(from, to).size();
+  }
+
+  // Tests the toggleWall method
+  void testToggleWall(Tester t) {
+    MazeWorld maze = new MazeWorld(4, 4, 6);
+    for (int i = 0; i < 4; i++) {
+      maze.onTick();
+    }
+    Vertex a = maze.allVertices.get(0).get(0);
+    Vertex b = a.outEdges.get(0).to;
+    ArrayList<Edge> unrevealed = maze.allEdges;
+    int walls = checkWallRuns(t, maze);
+    int runs = maze.wallRuns().size();
+
+    maze.toggleWall(a, b);
+    t.checkExpect(maze.hasPassage(a, b.x, b.y), false);
+    t.checkExpect(maze.hasPassage(b, a.x, a.y), false);
+    t.checkExpect(checkWallRuns(t, maze), walls + 1);
+    t.checkExpect(maze.wallRuns().size() <= runs + 1, true);
+    t.checkExpect(maze.allEdges, unrevealed);
+
+    maze.toggleWall(b, a);
+    t.checkExpect(maze.hasPassage(a, b.x, b.y), true);
+    t.checkExpect(maze.hasPassage(b, a.x, a.y), true);
+    t.checkExpect(a.outEdges.get(a.outEdges.size() - 1).weight, 
+        b.outEdges.get(b.outEdges.size() - 1).weight);
+    t.checkExpect(checkWallRuns(t, maze), walls);
+    t.checkExpect(maze.wallRuns().size(), runs);
+
+    // closing a passage the animation has not revealed yet changes no runs,
+    // and opening it again splits only the runs of its own row
+    MazeWorld fresh = new MazeWorld(4, 4, 6);
+    Vertex c = fresh.allVertices.get(1).get(1);
+    Vertex d = fresh.allVertices.get(2).get(1);
+    t.checkExpect(fresh.hasPassage(c, d.x, d.y), true);
+    fresh.toggleWall(d, c);
+    t.checkExpect(fresh.hasPassage(c, d.x, d.y), false);
+    t.checkExpect(fresh.rowRuns.get(1), new ArrayList<WallRun>(Arrays.asList(
+        new WallRun(true, 0, 1, 4))));
+    fresh.toggleWall(d, c);
+    t.checkExpect(fresh.rowRuns.get(0), new ArrayList<WallRun>(Arrays.asList(
+        new WallRun(true, 0, 0, 4))));
+    t.checkExpect(fresh.rowRuns.get(1), new ArrayList<WallRun>(Arrays.asList(
+        new WallRun(true, 0, 1, 1), new WallRun(true, 2, 1, 2))));
+    t.checkExpect(fresh.rowRuns.get(2), new ArrayList<WallRun>(Arrays.asList(
+        new WallRun(true, 0, 2, 4))));
+
+    t.checkException(new IllegalArgumentException("vertices are not adjacent"), 
+        maze, "toggleWall", a, maze.allVertices.get(1).get(1));
+  }
+
+  // Tests the onMouseClicked method
+  void testOnMouseClicked(Tester t) {
+    MazeWorld maze = new MazeWorld(3, 3, 6);
+    Vertex a = maze.allVertices.get(1).get(1);
+    boolean open = maze.hasPassage(a, 2, 1);
+
+    maze.onMouseClicked(new Posn(2 * MazeWorld.VERTEX_SIZE - 1, 
+        MazeWorld.VERTEX_SIZE + MazeWorld.VERTEX_SIZE / 2));
+    t.checkExpect(maze.hasPassage(a, 2, 1), !open);
+
+    // clicks on the outer border or the sidebar change nothing
+    maze.onMouseClicked(new Posn(1, MazeWorld.VERTEX_SIZE / 2));
+    maze.onMouseClicked(new Posn(3 * MazeWorld.VERTEX_SIZE + 50, 10));
+    t.checkExpect(maze.hasPassage(a, 2, 1), !open);
+  }
+
+  // Tests the LpaStarSolver class against fresh breadth first searches
+  void testLpaStarSolver(Tester t) {
+    MazeWorld maze = new MazeWorld(10, 8, 4);
+    Vertex start = maze.allVertices.get(0).get(0);
+    Vertex goal = maze.allVertices.get(7).get(9);
+    LpaStarSolver solver = new LpaStarSolver(maze, start, goal);
+
+    solver.computeShortestPath();
+    maze.explored = new ArrayList<Vertex>();
+    maze.searchHelp(start, goal, new Queue<Vertex>());
+    t.checkExpect(solver.path(), maze.pathTo(start, goal));
+
+    Random rand = new Random(8);
+    for (int i = 0; i < 40; i++) {
+      int x = rand.nextInt(9);
+      int y = rand.nextInt(7);
+      Vertex a = maze.allVertices.get(y).get(x);
+      Vertex b = rand.nextBoolean() ? maze.allVertices.get(y).get(x + 1) 
+          : maze.allVertices.get(y + 1).get(x);
+      maze.toggleWall(a, b);
+      solver.wallChanged(a, b);
+      solver.computeShortestPath();
+
+      ArrayList<Vertex> path = solver.path();
+      t.checkExpect(path.size(), bfsLength(maze, start, goal));
+      for (int j = 1; j < path.size(); j++) {
+        t.checkExpect(maze.hasPassage(path.get(j - 1), path.get(j).x, path.get(j).y), true);
+      }
+    }
+  }
+
+  // Tests the live path started by the l key
+  void testLivePath(Tester t) {
+    MazeWorld maze = new MazeWorld(5, 5, 2);
+    Vertex start = maze.allVertices.get(0).get(0);
+    Vertex goal = maze.allVertices.get(4).get(4);
+
+    maze.onKeyEvent("l");
+    t.checkExpect(maze.found, true);
+    t.checkExpect(maze.solution.get(0), start);
+    t.checkExpect(maze.solution.get(maze.solution.size() - 1), goal);
+    t.checkExpect(goal.color, Color.blue);
+
+    // closing the only passage into the goal leaves it unreachable
+    Vertex last = maze.solution.get(maze.solution.size() - 2);
+    maze.toggleWall(last, goal);
+    t.checkExpect(maze.found, false);
+    t.checkExpect(maze.solution.isEmpty(), true);
+    t.checkExpect(last.color, Color.gray);
+    t.checkExpect(goal.color, Color.green);
+
+    maze.toggleWall(goal, last);
+    t.checkExpect(maze.found, true);
+    t.checkExpect(maze.solution.size(), bfsLength(maze, start, goal));
+
+    maze.onKeyEvent("b");
+    t.checkExpect(maze.planner, null);
+  }
+
+  // the number of open passages in a grid
+  int passages(GridMaze maze) {
+    int open = 0;
+    for (int y = 0; y < maze.height; y++) {
+      for (int x = 0; x < maze.width; x++) {
+        for (int dir = 0; dir < 2; dir++) {
+          if (maze.isOpen(x, y, dir)) {
+            open++;
+          }
+        }
+      }
+    }
+    return open;
+  }
+
+  // Tests the generate method of GridMaze
+  void testGridMazeGenerate(Tester t) {
+    GridMaze perfect = GridMaze.generate(37, 23, 5, 0);
+
+    // a perfect maze is a spanning tree: connected with one passage fewer than cells
+    t.checkExpect(passages(perfect), 37 * 23 - 1);
+    for (int y = 0; y < 23; y++) {
+      t.checkExpect(perfect.bfsPath(0, 0, 36, y).isEmpty(), false);
+    }
+    t.checkExpect(GridMaze.generate(37, 23, 5, 0).walls, perfect.walls);
+
+    GridMaze braided = GridMaze.generate(37, 23, 5, 0.2);
+    t.checkExpect(passages(braided) > 37 * 23 - 1, true);
+  }
+
+  // Tests the fromWorld and readWalls methods of GridMaze
+  void testGridMazeFromWorld(Tester t) throws IOException {
+    MazeWorld world = new MazeWorld(9, 7, 13);
+    GridMaze maze = GridMaze.fromWorld(world);
 
     for (ArrayList<Vertex> l : world.allVertices) {
       for (Vertex v : l) {
-        scene.placeImageXY(v.drawVertex(), (v.x * MazeWorld.VERTEX_SIZE) 
-            + (MazeWorld.VERTEX_SIZE / 2), (v.y * MazeWorld.VERTEX_SIZE) 
-            + (MazeWorld.VERTEX_SIZE / 2));
+        for (int dir = 0; dir < 4; dir++) {
+          t.checkExpect(maze.isOpen(v.x, v.y, dir), 
+              world.hasPassage(v, v.x + GridMaze.DX[dir], v.y + GridMaze.DY[dir]));
+        }
       }
     }
 
-    for (Edge e : world.allEdges) {
-      if (e.to.x == e.from.x) {
-        scene.placeImageXY(
-            new RectangleImage(MazeWorld.VERTEX_SIZE, MazeWorld.VERTEX_SIZE / 8, 
-                OutlineMode.SOLID, Color.black), (e.to.x * MazeWorld.VERTEX_SIZE) 
-            + (MazeWorld.VERTEX_SIZE / 2),((e.to.y + e.from.y) * MazeWorld.VERTEX_SIZE / 2) 
-            + (MazeWorld.VERTEX_SIZE / 2));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    world.writeWalls(out);
+    GridMaze read = GridMaze.readWalls(new ByteArrayInputStream(out.toByteArray()));
+    t.checkExpect(read.width, 9);
+    t.checkExpect(read.height, 7);
+    for (int y = 0; y < 7; y++) {
+      for (int x = 0; x < 9; x++) {
+        for (int dir = 0; dir < 4; dir++) {
+          t.checkExpect(read.isOpen(x, y, dir), maze.isOpen(x, y, dir));
+        }
+      }
+    }
+  }
+
+  // Tests the toggleWall method of GridMaze
+  void testGridMazeToggleWall(Tester t) {
+    GridMaze maze = new GridMaze(3, 2);
+
+    t.checkExpect(maze.isOpen(1, 1, 3), false);
+    maze.toggleWall(1, 1, 1, 0);
+    t.checkExpect(maze.isOpen(1, 1, 3), true);
+    t.checkExpect(maze.isOpen(1, 0, 1), true);
+    t.checkExpect(maze.isOpen(2, 0, 0), false);
+    maze.toggleWall(1, 0, 1, 1);
+    t.checkExpect(maze.isOpen(1, 0, 1), false);
+
+    t.checkException(new IllegalArgumentException("cells are not adjacent"), 
+        maze, "toggleWall", 0, 0, 1, 1);
+    t.checkException(new IllegalArgumentException("cells are not adjacent"), 
+        maze, "toggleWall", 2, 0, 3, 0);
+  }
+
+  // checks that a path starts and ends at the given cells and only
+  // steps through open passages
+  void checkPath(Tester t, GridMaze maze, ArrayList<Posn> path, Posn from, Posn to) {
+    t.checkExpect(path.get(0), from);
+    t.checkExpect(path.get(path.size() - 1), to);
+    for (int i = 1; i < path.size(); i++) {
+      Posn a = path.get(i - 1);
+      Posn b = path.get(i);
+      t.checkExpect(maze.isOpen(a.x, a.y, maze.direction(a.x, a.y, b.x, b.y)), true);
+    }
+  }
+
+  // Tests the HierarchicalPathfinder class against flat breadth first searches
+  void testHierarchicalPathfinder(Tester t) {
+    GridMaze maze = GridMaze.generate(61, 45, 7, 0.1);
+    HierarchicalPathfinder finder = new HierarchicalPathfinder(maze, 8);
+    Random rand = new Random(1);
+
+    t.checkExpect(finder.path(4, 4, 4, 4), new ArrayList<Posn>(Arrays.asList(new Posn(4, 4))));
+    for (int i = 0; i < 60; i++) {
+      int sx = rand.nextInt(61);
+      int sy = rand.nextInt(45);
+      // every third query stays within one chunk, where the route may still leave it
+      int tx = i % 3 == 0 ? Math.min(60, sx - sx % 8 + rand.nextInt(8)) : rand.nextInt(61);
+      int ty = i % 3 == 0 ? Math.min(44, sy - sy % 8 + rand.nextInt(8)) : rand.nextInt(45);
+      ArrayList<Posn> path = finder.path(sx, sy, tx, ty);
+      t.checkExpect(path.size(), maze.bfsPath(sx, sy, tx, ty).size());
+      checkPath(t, maze, path, new Posn(sx, sy), new Posn(tx, ty));
+    }
+  }
+
+  // tests that concurrent queries on one HierarchicalPathfinder each get
+  // their own shortest path
+  void testHierarchicalConcurrent(Tester t) throws Exception {
+    GridMaze maze = GridMaze.generate(61, 45, 7, 0.1);
+    HierarchicalPathfinder finder = new HierarchicalPathfinder(maze, 8);
+    ExecutorService clients = Executors.newFixedThreadPool(8);
+    ArrayList<Future<Integer>> results = new ArrayList<Future<Integer>>();
+    ArrayList<Integer> expected = new ArrayList<Integer>();
+    for (int i = 0; i < 40; i++) {
+      int sx = i % 61;
+      int sy = (7 * i) % 45;
+      int tx = 60 - (3 * i) % 61;
+      int ty = 44 - i % 45;
+      expected.add(maze.bfsPath(sx, sy, tx, ty).size());
+      results.add(clients.submit(() -> finder.path(sx, sy, tx, ty).size()));
+    }
+    for (int i = 0; i < 40; i++) {
+      t.checkExpect(results.get(i).get(), expected.get(i));
+    }
+    clients.shutdown();
+  }
+
+  // Tests that HierarchicalPathfinder follows walls toggled after preprocessing
+  void testHierarchicalToggleWall(Tester t) {
+    GridMaze maze = GridMaze.generate(40, 40, 9, 0);
+    HierarchicalPathfinder finder = new HierarchicalPathfinder(maze, 10);
+    Random rand = new Random(4);
+
+    for (int i = 0; i < 40; i++) {
+      int x = rand.nextInt(39);
+      int y = rand.nextInt(39);
+      if (rand.nextBoolean()) {
+        finder.toggleWall(x, y, x + 1, y);
       }
       else {
-        scene.placeImageXY(
-            new RectangleImage(MazeWorld.VERTEX_SIZE / 8, MazeWorld.VERTEX_SIZE, 
-                OutlineMode.SOLID, Color.black), ((e.to.x + e.from.x) * MazeWorld.VERTEX_SIZE / 2) 
-            + (MazeWorld.VERTEX_SIZE / 2),(e.to.y * MazeWorld.VERTEX_SIZE) 
-            + (MazeWorld.VERTEX_SIZE / 2));
+        finder.toggleWall(x, y, x, y + 1);
+      }
+      ArrayList<Posn> flat = maze.bfsPath(0, 0, 39, 39);
+      ArrayList<Posn> path = finder.path(0, 0, 39, 39);
+      t.checkExpect(path.size(), flat.size());
+      if (!path.isEmpty()) {
+        checkPath(t, maze, path, new Posn(0, 0), new Posn(39, 39));
       }
     }
-    
 
-    
-    scene.placeImageXY(new TextImage("Time : 0:00", 20, FontStyle.BOLD, Color.black), 
-        (MazeWorld.WIDTH * MazeWorld.VERTEX_SIZE) + 100, 
-        MazeWorld.HEIGHT * MazeWorld.VERTEX_SIZE / 8);
+    t.checkException(new IllegalArgumentException("chunk sides are limited to 181 cells"),
+        this, "makeFinder", maze, 182);
+    t.checkException(new IllegalArgumentException("chunk sides are limited to 181 cells"),
+        this, "makeFinder", maze, 46341);
+    t.checkException(new IllegalArgumentException("chunk sides are limited to 181 cells"),
+        this, "makeFinder", maze, 65536);
+    t.checkException(new IllegalArgumentException("chunk size must be at least 1"),
+        this, "makeFinder", maze, 0);
+    t.checkException(new IllegalArgumentException("chunk size must be at least 1"),
+        this, "makeFinder", maze, -3);
+    t.checkException(new IllegalArgumentException("cells are not on the grid"),
+        finder, "path", 40, 0, 39, 39);
+    t.checkException(new IllegalArgumentException("cells are not on the grid"),
+        finder, "path", 0, 0, 39, -1);
+    t.checkException(new IllegalArgumentException("cells are not on the grid"),
+        finder, "path", -1, 5, 39, 39);
+  }
+
+  // builds a HierarchicalPathfinder with the given chunk size
+  HierarchicalPathfinder makeFinder(GridMaze maze, int chunkSize) {
+    return new HierarchicalPathfinder(maze, chunkSize);
+  }
 
+  // builds a GridMaze of the given size
+  GridMaze makeGrid(int width, int height) {
+    return new GridMaze(width, height);
+  }
 
-  
+  // reads a GridMaze from a stream holding only a header of the given size
+  GridMaze readHeader(int width, int height) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    DataOutputStream data = new DataOutputStream(out);
+    data.writeInt(width);
+    data.writeInt(height);
+    return GridMaze.readWalls(new ByteArrayInputStream(out.toByteArray()));
+  }
 
-    t.checkExpect(world.makeScene(), scene);
+  // tests that a GridMaze rejects sizes its int cell numbers cannot hold
+  void testGridMazeSize(Tester t) throws IOException {
+    t.checkExpect(makeGrid(1, 1).walls.length, 1);
+    // a valid header with no walls after it runs out of input
+    t.checkException(new EOFException(), this, "readHeader", 1, 1);
+    t.checkException(new IllegalArgumentException("width and height must be at least 1"),
+        this, "makeGrid", 0, 5);
+    t.checkException(new IllegalArgumentException("width and height must be at least 1"),
+        this, "makeGrid", 5, -1);
+    t.checkException(new IllegalArgumentException("a grid holds at most 2147483647 cells"),
+        this, "makeGrid", 46341, 46341);
+    t.checkException(new IllegalArgumentException("width and height must be at least 1"),
+        this, "readHeader", -7, 3);
+    t.checkException(new IllegalArgumentException("a grid holds at most 2147483647 cells"),
+        this, "readHeader", 65536, 65536);
+    t.checkException(new IllegalArgumentException("a grid holds at most 2147483647 cells"),
+        this, "readHeader", Integer.MAX_VALUE, 2);
   }
 
   // displays the scene